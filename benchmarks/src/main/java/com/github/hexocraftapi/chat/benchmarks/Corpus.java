@@ -0,0 +1,118 @@
+package com.github.hexocraftapi.chat.benchmarks;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.MessageBuilder;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import org.bukkit.ChatColor;
+
+/**
+ * Messages the benchmarks run over.
+ */
+public enum Corpus
+{
+    /**
+     * A typical player chat line: rank, name and a short message
+     */
+    SHORT_CHAT
+    {
+        @Override
+        public BaseComponent[] components()
+        {
+            return new MessageBuilder( "[" ).color( ChatColor.DARK_GRAY )
+                    .append( "Admin" ).color( ChatColor.RED ).bold( true )
+                    .event( new HoverEvent( HoverEvent.Action.SHOW_TEXT, TextComponent.fromLegacyText( "§7Server staff" ) ) )
+                    .append( "] ", MessageBuilder.FormatRetention.NONE ).color( ChatColor.DARK_GRAY )
+                    .append( "Notch" ).color( ChatColor.WHITE )
+                    .event( new ClickEvent( ClickEvent.Action.SUGGEST_COMMAND, "/msg Notch " ) )
+                    .append( ": ", MessageBuilder.FormatRetention.NONE ).color( ChatColor.GRAY )
+                    .append( "anyone up for a game of spleef?" ).color( ChatColor.WHITE )
+                    .create();
+        }
+    },
+
+    /**
+     * A menu entry whose hover tooltips contain hover tooltips, several
+     * levels deep
+     */
+    NESTED_HOVER
+    {
+        @Override
+        public BaseComponent[] components()
+        {
+            return new BaseComponent[] { nested( 4 ) };
+        }
+
+        private BaseComponent nested(int depth)
+        {
+            TextComponent component = new TextComponent( "Level " + depth + " " );
+            component.setColor( ChatColor.values()[depth] );
+            component.setItalic( depth % 2 == 0 );
+            for ( int i = 0; i < 3; i++ )
+            {
+                TextComponent child = new TextComponent( "entry " + i + " <" + depth + "> " );
+                child.setUnderlined( i == 1 );
+                child.setClickEvent( new ClickEvent( ClickEvent.Action.RUN_COMMAND, "/menu open " + depth + " " + i ) );
+                component.addExtra( child );
+            }
+            if ( depth > 0 )
+            {
+                component.setHoverEvent( new HoverEvent( HoverEvent.Action.SHOW_TEXT, new BaseComponent[] { nested( depth - 1 ), nested( depth - 1 ) } ) );
+            }
+            return component;
+        }
+    },
+
+    /**
+     * A long legacy line full of colour codes and links
+     */
+    URL_LINE
+    {
+        @Override
+        public BaseComponent[] components()
+        {
+            return TextComponent.fromLegacyText( legacy() );
+        }
+
+        @Override
+        public String legacy()
+        {
+            return "§6[News] §eThe new season starts tomorrow, read the patch notes at https://example.com/news/season-4?ref=chat&lang=en "
+                    + "§7and vote for us on §bwww.minecraft-server-list.com/server/12345/vote §7to get §l3 crates§r§7. "
+                    + "§aJoin the discord: §nhttps://discord.gg/abcdefg§r §7or the forums at §bforum.example.org/t/welcome§7, "
+                    + "maps are on §bhttp://map.example.com:8123/ §7and the wiki on §bwiki.example.net/Main_Page §7- have fun!";
+        }
+    };
+
+    /**
+     * Builds the components of the message. A new tree is built on each call.
+     *
+     * @return the components
+     */
+    public abstract BaseComponent[] components();
+
+    /**
+     * @return the message as legacy text
+     */
+    public String legacy()
+    {
+        return BaseComponent.toLegacyText( components() );
+    }
+}
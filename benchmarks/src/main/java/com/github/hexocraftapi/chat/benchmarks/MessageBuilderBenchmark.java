@@ -0,0 +1,66 @@
+package com.github.hexocraftapi.chat.benchmarks;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.MessageBuilder;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import org.bukkit.ChatColor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MessageBuilder#append(String)} and {@link MessageBuilder#create()}.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class MessageBuilderBenchmark
+{
+    /**
+     * Number of parts appended to the builder
+     */
+    @Param( { "3", "30" } )
+    public int parts;
+
+    @Benchmark
+    public BaseComponent[] appendAndCreate()
+    {
+        MessageBuilder builder = new MessageBuilder( "Start " ).color( ChatColor.GOLD );
+        for ( int i = 0; i < parts; i++ )
+        {
+            switch ( i % 3 )
+            {
+                case 0:
+                    builder.append( "word " ).bold( true );
+                    break;
+                case 1:
+                    builder.append( "link ", MessageBuilder.FormatRetention.FORMATTING ).color( ChatColor.AQUA )
+                            .event( new ClickEvent( ClickEvent.Action.OPEN_URL, "https://example.com/" + i ) );
+                    break;
+                default:
+                    builder.append( "plain ", MessageBuilder.FormatRetention.NONE );
+                    break;
+            }
+        }
+        return builder.create();
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.hexocraftapi.chat.benchmarks;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.MessageBuilder;
+import com.github.hexocraftapi.chat.MessageTemplate;
+import com.github.hexocraftapi.chat.Serializer.ComponentSerializer;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import org.bukkit.ChatColor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MessageTemplate#toJson(Object...)} against building and serializing
+ * the same message with a {@link MessageBuilder}.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class MessageTemplateBenchmark
+{
+    private MessageTemplate template;
+
+    @Setup
+    public void setup()
+    {
+        template = new MessageTemplate( chatLine( "{rank}", "{name}", "{message}" ) );
+    }
+
+    private static BaseComponent[] chatLine(String rank, String name, String message)
+    {
+        return new MessageBuilder( "[" ).color( ChatColor.DARK_GRAY )
+                .append( rank ).color( ChatColor.GOLD )
+                .append( "] ", MessageBuilder.FormatRetention.NONE ).color( ChatColor.DARK_GRAY )
+                .append( name, MessageBuilder.FormatRetention.NONE ).color( ChatColor.YELLOW )
+                .event( new ClickEvent( ClickEvent.Action.SUGGEST_COMMAND, "/msg " + name + " " ) )
+                .append( ": " + message, MessageBuilder.FormatRetention.NONE ).color( ChatColor.WHITE )
+                .create();
+    }
+
+    @Benchmark
+    public String template()
+    {
+        return template.toJson( "Admin", "Notch", "Hello everyone, the server restarts in 5 minutes" );
+    }
+
+    @Benchmark
+    public String buildAndSerialize()
+    {
+        return ComponentSerializer.toString( chatLine( "Admin", "Notch", "Hello everyone, the server restarts in 5 minutes" ) );
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.hexocraftapi.chat.benchmarks;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.Serializer.ComponentSerializer;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ComponentSerializer#toString(BaseComponent...)} and
+ * {@link ComponentSerializer#parse(String)}.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class SerializerBenchmark
+{
+    @Param
+    public Corpus corpus;
+
+    private BaseComponent[] components;
+    private String json;
+
+    @Setup
+    public void setup()
+    {
+        components = corpus.components();
+        json = ComponentSerializer.toString( components );
+    }
+
+    @Benchmark
+    public String toJson()
+    {
+        return ComponentSerializer.toString( components );
+    }
+
+    @Benchmark
+    public BaseComponent[] parse()
+    {
+        return ComponentSerializer.parse( json );
+    }
+}
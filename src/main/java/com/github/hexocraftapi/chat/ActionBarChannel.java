@@ -0,0 +1,289 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.github.hexocraftapi.chat.Serializer.ComponentSerializer;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.google.common.base.Preconditions;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends action bar messages, only the latest of each player and only when it
+ * changes.
+ * <p>
+ * Once started, a message is not sent right away: it waits in a single slot
+ * per player, a newer message replacing it, and the slots are flushed once
+ * per tick. Only the message that is flushed is serialized. Its json is then
+ * compared with the last one sent to the player, by hash then content, and
+ * not sent again if it is the same. A frozen message made of the components
+ * last sent isn't even serialized. As the client hides the action bar after a
+ * few seconds, the same message is sent again once the refresh interval is
+ * over.
+ * </p>
+ * <p>
+ * Until started, messages are sent right away, duplicates being skipped all
+ * the same. The slots of players gone offline are forgotten, and a player
+ * who logged in again gets a new slot. Components must not be modified once
+ * sent.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public class ActionBarChannel
+{
+	private final ConcurrentMap<UUID, Slot> slots = new ConcurrentHashMap<UUID, Slot>();
+	private volatile long refreshNanos = TimeUnit.SECONDS.toNanos(2);
+	private volatile BukkitTask task;
+	/**
+	 * Updates since the slots of offline players were last removed
+	 */
+	private final AtomicInteger updates = new AtomicInteger();
+
+	public long getRefreshInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(this.refreshNanos);
+	}
+
+	/**
+	 * Sets how long the same message isn't sent again. Defaults to 2 seconds,
+	 * less than the time the client displays it.
+	 *
+	 * @param refreshInterval The interval in milliseconds.
+	 * @return This ActionBarChannel.
+	 */
+	public ActionBarChannel refreshInterval(long refreshInterval)
+	{
+		Preconditions.checkArgument(refreshInterval >= 0, "refreshInterval can't be negative");
+		this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshInterval);
+		return this;
+	}
+
+	/**
+	 * Starts flushing the slots once per tick.
+	 *
+	 * @param plugin The plugin the flush task runs for.
+	 * @return This ActionBarChannel.
+	 */
+	public synchronized ActionBarChannel start(Plugin plugin)
+	{
+		if(task == null)
+		{
+			task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					flush();
+				}
+			}, 1, 1);
+		}
+		return this;
+	}
+
+	/**
+	 * Stops the flush task, sending the messages waiting. To be called on the
+	 * main thread.
+	 */
+	public synchronized void stop()
+	{
+		if(task != null)
+		{
+			task.cancel();
+			task = null;
+		}
+		flush();
+	}
+
+	/**
+	 * @return true if the messages wait for the flush task
+	 */
+	public boolean isStarted() {
+		return this.task != null;
+	}
+
+	/**
+	 * Sends a message, replacing the one waiting for the player.
+	 *
+	 * @param player The player receiving the message.
+	 * @param message The message, not to be modified afterwards.
+	 */
+	public void send(Player player, BaseComponent... message)
+	{
+		update(player, new Update(message, null));
+	}
+
+	/**
+	 * Sends a json message, replacing the one waiting for the player.
+	 *
+	 * @param player The player receiving the message.
+	 * @param jsonMessage The json message.
+	 */
+	public void sendJson(Player player, String jsonMessage)
+	{
+		update(player, new Update(null, jsonMessage));
+	}
+
+	/**
+	 * Forgets the message last sent to a player, so that the next one is sent
+	 * even if it's the same.
+	 *
+	 * @param player The player.
+	 */
+	public void reset(Player player)
+	{
+		slots.remove(player.getUniqueId());
+	}
+
+	private void update(Player player, Update update)
+	{
+		UUID id = player.getUniqueId();
+		Slot slot = slots.get(id);
+		// A player who logged in again is a new Player, whose client shows nothing
+		while(slot == null || slot.player != player)
+		{
+			Slot created = new Slot(player);
+			if(slot == null ? slots.putIfAbsent(id, created) == null : slots.replace(id, slot, created))
+				slot = created;
+			else
+				slot = slots.get(id);
+		}
+		slot.pending.set(update);
+		if(!isStarted())
+		{
+			slot.flush(refreshNanos);
+			// Nothing else removes the slots until started: swept once the
+			// updates since the last sweep are as many as the slots then
+			if(updates.incrementAndGet() * 2 >= slots.size())
+			{
+				updates.set(0);
+				removeOffline();
+			}
+		}
+	}
+
+	/**
+	 * Sends the messages waiting. Called once per tick once started; to be
+	 * called on the main thread.
+	 */
+	public void flush()
+	{
+		Iterator<Slot> iterator = slots.values().iterator();
+		while(iterator.hasNext())
+		{
+			Slot slot = iterator.next();
+			if(!slot.player.isOnline())
+				iterator.remove();
+			else
+				slot.flush(refreshNanos);
+		}
+		updates.set(0);
+	}
+
+	private void removeOffline()
+	{
+		Iterator<Slot> iterator = slots.values().iterator();
+		while(iterator.hasNext())
+		{
+			if(!iterator.next().player.isOnline())
+				iterator.remove();
+		}
+	}
+
+	/**
+	 * A message, either components or json
+	 */
+	private static final class Update
+	{
+		final BaseComponent[] components;
+		final String json;
+
+		Update(BaseComponent[] components, String json)
+		{
+			this.components = components;
+			this.json = json;
+		}
+	}
+
+	/**
+	 * The message waiting for a player and the one last sent
+	 */
+	private static final class Slot
+	{
+		final Player player;
+		final AtomicReference<Update> pending = new AtomicReference<Update>();
+
+		private BaseComponent[] lastComponents;
+		private String lastJson;
+		private int lastHash;
+		private long lastSent;
+
+		Slot(Player player)
+		{
+			this.player = player;
+		}
+
+		synchronized void flush(long refreshNanos)
+		{
+			Update update = pending.getAndSet(null);
+			if(update == null)
+				return;
+
+			long now = System.nanoTime();
+			boolean refresh = lastJson == null || now - lastSent >= refreshNanos;
+			if(!refresh && update.components != null && sameFrozen(update.components))
+				return;
+
+			String json = update.json != null ? update.json : ComponentSerializer.toString(update.components);
+			int hash = json.hashCode();
+			if(!refresh && hash == lastHash && json.equals(lastJson))
+				return;
+
+			Chat.sendJsonMessage(ChatMessageType.ACTION_BAR, player, json);
+			lastComponents = update.components;
+			lastJson = json;
+			lastHash = hash;
+			lastSent = now;
+		}
+
+		/**
+		 * Whether the components are the frozen ones last sent, whose json
+		 * can't have changed
+		 */
+		private boolean sameFrozen(BaseComponent[] components)
+		{
+			if(lastComponents == null || lastComponents.length != components.length)
+				return false;
+			for(int i = 0; i < components.length; i++)
+			{
+				if(components[i] != lastComponents[i] || (components[i] != null && !components[i].isFrozen()))
+					return false;
+			}
+			return true;
+		}
+	}
+}
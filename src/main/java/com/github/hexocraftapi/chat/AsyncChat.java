@@ -0,0 +1,683 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.metrics.ChatMetrics;
+import com.github.hexocraftapi.chat.metrics.Gauge;
+import com.github.hexocraftapi.chat.metrics.Histogram;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends messages without serializing them on the calling thread.
+ * <p>
+ * Messages are serialized, and their packets built, by a bounded pool of
+ * worker threads. Once ready they wait in a queue per player, and the queues
+ * are emptied once per tick on the main thread: the packets of a player are
+ * written to its connection and flushed once. A player receives its messages
+ * in the order they were sent, whichever worker serialized them. The
+ * packets bypass the queue of the server's NetworkManager, so they are not
+ * ordered against the other packets the server sends.
+ * </p>
+ * <p>
+ * A connection that can't keep up is not written to until its outbound
+ * buffer drains, its messages waiting in its queue instead. A full queue
+ * drops its oldest message of the lowest {@link MessagePriority}, or the new
+ * message if it is of a lower priority than all the queued ones. The futures
+ * of dropped messages are cancelled.
+ * </p>
+ * <p>
+ * The components given must not be modified once sent, frozen components
+ * being the safest. When the pool is busy and its queue full, messages are
+ * serialized by the calling thread.
+ * </p>
+ * <pre>
+ * AsyncChat chat = new AsyncChat(plugin).start();
+ * chat.sendMessage(player, components);
+ * ...
+ * chat.stop();
+ * </pre>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public class AsyncChat
+{
+	private final Plugin plugin;
+	private final ListeningExecutorService executor;
+	private final ConcurrentMap<UUID, PlayerQueue> queues = new ConcurrentHashMap<UUID, PlayerQueue>();
+	private volatile int maxQueueDepth = 256;
+	private volatile OversizePolicy oversizePolicy = Chat.OVERSIZE_POLICY;
+	private final AtomicLong dropped = new AtomicLong();
+	/**
+	 * Time spent serializing, once the metrics are registered
+	 */
+	private volatile Histogram serializeNanos;
+	/**
+	 * Gauges registered by name, removed once stopped
+	 */
+	private final Map<String, Gauge> gauges = new HashMap<String, Gauge>();
+	private BukkitTask task;
+	private volatile boolean stopped;
+
+	/**
+	 * Creates an AsyncChat using half of the processors, with room for 1024
+	 * messages waiting to be serialized.
+	 *
+	 * @param plugin The plugin the flush task runs for.
+	 */
+	public AsyncChat(Plugin plugin)
+	{
+		this(plugin, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 1024);
+	}
+
+	/**
+	 * Creates an AsyncChat.
+	 *
+	 * @param plugin The plugin the flush task runs for.
+	 * @param threads The number of worker threads.
+	 * @param queueCapacity The number of messages that can wait for a worker.
+	 */
+	public AsyncChat(Plugin plugin, int threads, int queueCapacity)
+	{
+		Preconditions.checkArgument(threads > 0, "threads must be positive");
+		Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be positive");
+		this.plugin = Preconditions.checkNotNull(plugin, "plugin");
+
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+		                                                 new ArrayBlockingQueue<Runnable>(queueCapacity),
+		                                                 new ThreadFactoryBuilder().setNameFormat(plugin.getName() + " chat worker %d").setDaemon(true).build(),
+		                                                 new RejectedExecutionHandler()
+		                                                 {
+			                                                 @Override
+			                                                 public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+			                                                 {
+				                                                 // Runs on the caller while the workers are busy, fails once stopped
+				                                                 if(executor.isShutdown())
+					                                                 throw new RejectedExecutionException("The chat has been stopped");
+				                                                 r.run();
+			                                                 }
+		                                                 });
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = MoreExecutors.listeningDecorator(pool);
+	}
+
+	public int getMaxQueueDepth() {
+		return this.maxQueueDepth;
+	}
+
+	/**
+	 * Sets the number of messages that can wait for a player before some are
+	 * dropped. Defaults to 256.
+	 *
+	 * @param maxQueueDepth The maximum number of messages queued per player.
+	 * @return This AsyncChat.
+	 */
+	public AsyncChat maxQueueDepth(int maxQueueDepth)
+	{
+		Preconditions.checkArgument(maxQueueDepth > 0, "maxQueueDepth must be positive");
+		this.maxQueueDepth = maxQueueDepth;
+		return this;
+	}
+
+	public OversizePolicy getOversizePolicy() {
+		return this.oversizePolicy;
+	}
+
+	/**
+	 * Sets what is done with a message longer than {@link Chat#MAX_JSON_LENGTH}.
+	 * Defaults to {@link Chat#OVERSIZE_POLICY}. A rejected message fails its
+	 * future.
+	 *
+	 * @param oversizePolicy The policy of the messages sent afterwards.
+	 * @return This AsyncChat.
+	 */
+	public AsyncChat oversizePolicy(OversizePolicy oversizePolicy)
+	{
+		this.oversizePolicy = Preconditions.checkNotNull(oversizePolicy, "oversizePolicy");
+		return this;
+	}
+
+	/**
+	 * Returns the number of messages waiting to be sent to a player.
+	 *
+	 * @param player The player.
+	 * @return The depth of the queue of the player.
+	 */
+	public int getQueueDepth(Player player)
+	{
+		PlayerQueue queue = queues.get(player.getUniqueId());
+		return queue != null ? queue.depth() : 0;
+	}
+
+	/**
+	 * Returns the number of messages dropped for a player since it joined.
+	 *
+	 * @param player The player.
+	 * @return The number of messages dropped.
+	 */
+	public long getDropped(Player player)
+	{
+		PlayerQueue queue = queues.get(player.getUniqueId());
+		return queue != null ? queue.dropped() : 0;
+	}
+
+	/**
+	 * @return the number of messages dropped for all the players
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of messages waiting to be sent to all the players
+	 */
+	public int getQueueDepth()
+	{
+		int depth = 0;
+		for(PlayerQueue queue : queues.values())
+			depth += queue.depth();
+		return depth;
+	}
+
+	/**
+	 * Registers the metrics of this AsyncChat in {@link ChatMetrics}: the
+	 * gauges {@code <name>.queued} and {@code <name>.dropped}, and the
+	 * histogram {@code <name>.serialize.nanos} of the time its workers spend
+	 * serializing. Using the name of the plugin tells apart the cost of each
+	 * plugin. The gauges are removed by {@link #stop()}.
+	 *
+	 * @param name The prefix of the metrics.
+	 * @return This AsyncChat.
+	 */
+	public synchronized AsyncChat registerMetrics(String name)
+	{
+		gauge(name + ".queued", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return getQueueDepth();
+			}
+		});
+		gauge(name + ".dropped", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return getDropped();
+			}
+		});
+		this.serializeNanos = ChatMetrics.histogram(name + ".serialize.nanos");
+		return this;
+	}
+
+	private void gauge(String name, Gauge gauge)
+	{
+		ChatMetrics.gauge(name, gauge);
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Starts flushing the queues once per tick.
+	 *
+	 * @return This AsyncChat.
+	 * @throws IllegalStateException if the AsyncChat has been stopped.
+	 */
+	public synchronized AsyncChat start()
+	{
+		Preconditions.checkState(!stopped, "The chat has been stopped");
+		if(task == null)
+		{
+			task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					flush();
+				}
+			}, 1, 1);
+		}
+		return this;
+	}
+
+	/**
+	 * Stops the workers and the flush task. The messages already serialized
+	 * are sent, the others are dropped, and the messages sent afterwards
+	 * fail right away. A stopped AsyncChat can't be started again. To be
+	 * called on the main thread, when the plugin is disabled.
+	 */
+	public synchronized void stop()
+	{
+		stopped = true;
+		// The gauges would keep this AsyncChat, and its plugin, reachable
+		for(Map.Entry<String, Gauge> gauge : gauges.entrySet())
+			ChatMetrics.remove(gauge.getKey(), gauge.getValue());
+		gauges.clear();
+		if(task != null)
+		{
+			task.cancel();
+			task = null;
+		}
+		executor.shutdownNow();
+		flush();
+		for(PlayerQueue queue : queues.values())
+			queue.fail(new CancellationException("The chat has been stopped"));
+		queues.clear();
+	}
+
+	/**
+	 * Sends a message in the chat.
+	 *
+	 * @param player The player receiving the message.
+	 * @param messages The message, not to be modified afterwards.
+	 * @return A future completed once the message has been written to the
+	 *         connection of the player.
+	 */
+	public ListenableFuture<Void> sendMessage(Player player, BaseComponent... messages)
+	{
+		return sendMessage(ChatMessageType.CHAT, player, messages);
+	}
+
+	/**
+	 * Sends a message. A message longer than {@link Chat#MAX_JSON_LENGTH}
+	 * is handled according to {@link #getOversizePolicy()}.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param player The player receiving the message.
+	 * @param messages The message, not to be modified afterwards.
+	 * @return A future completed once the message has been written to the
+	 *         connection of the player.
+	 */
+	public ListenableFuture<Void> sendMessage(ChatMessageType position, Player player, BaseComponent... messages)
+	{
+		return sendMessage(position, MessagePriority.of(position), player, messages);
+	}
+
+	/**
+	 * Sends a message with a priority other than the one of its position.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param priority The priority of the message.
+	 * @param player The player receiving the message.
+	 * @param messages The message, not to be modified afterwards.
+	 * @return A future completed once the message has been written to the
+	 *         connection of the player, or cancelled if it has been dropped.
+	 * @see #sendMessage(ChatMessageType, Player, BaseComponent...)
+	 */
+	public ListenableFuture<Void> sendMessage(final ChatMessageType position, MessagePriority priority, Player player, final BaseComponent... messages)
+	{
+		final OversizePolicy policy = oversizePolicy;
+		return enqueue(player, priority, new Callable<PreparedMessage[]>()
+		{
+			@Override
+			public PreparedMessage[] call()
+			{
+				Histogram histogram = serializeNanos;
+				if(histogram == null || !ChatMetrics.isEnabled())
+					return prepare(position, messages, policy);
+
+				long start = System.nanoTime();
+				PreparedMessage[] prepared = prepare(position, messages, policy);
+				histogram.record(System.nanoTime() - start);
+				return prepared;
+			}
+		});
+	}
+
+	private static PreparedMessage[] prepare(ChatMessageType position, BaseComponent[] messages, OversizePolicy policy)
+	{
+		return new PreparedMessage[]{ new PreparedMessage(position, policy, messages) };
+	}
+
+	/**
+	 * Sends a json message. A json longer than {@link Chat#MAX_JSON_LENGTH}
+	 * is parsed and handled according to {@link #getOversizePolicy()}.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param player The player receiving the message.
+	 * @param jsonMessage The json message.
+	 * @return A future completed once the message has been written to the
+	 *         connection of the player.
+	 */
+	public ListenableFuture<Void> sendJsonMessage(final ChatMessageType position, Player player, final String jsonMessage)
+	{
+		final OversizePolicy policy = oversizePolicy;
+		return enqueue(player, MessagePriority.of(position), new Callable<PreparedMessage[]>()
+		{
+			@Override
+			public PreparedMessage[] call()
+			{
+				return new PreparedMessage[]{ new PreparedMessage(position, jsonMessage, policy) };
+			}
+		});
+	}
+
+	/**
+	 * Sends a message already prepared, with the next flush.
+	 *
+	 * @param player The player receiving the message.
+	 * @param message The message.
+	 * @return A future completed once the message has been written to the
+	 *         connection of the player.
+	 */
+	public ListenableFuture<Void> sendMessage(Player player, PreparedMessage message)
+	{
+		Pending pending = new Pending(MessagePriority.of(message.getPosition()));
+		if(enqueue(player, pending))
+			pending.setMessages(Futures.immediateFuture(new PreparedMessage[]{ message }));
+		return pending.sent;
+	}
+
+	private ListenableFuture<Void> enqueue(Player player, MessagePriority priority, Callable<PreparedMessage[]> serialization)
+	{
+		// Queued before being serialized to keep the order of the messages
+		Pending pending = new Pending(priority);
+		if(enqueue(player, pending))
+		{
+			try
+			{
+				pending.setMessages(executor.submit(serialization));
+			}
+			catch(RejectedExecutionException e)
+			{
+				pending.setMessages(Futures.<PreparedMessage[]>immediateFailedFuture(e));
+				pending.sent.setException(e);
+			}
+		}
+		return pending.sent;
+	}
+
+	/**
+	 * @return false if the message has been dropped right away
+	 */
+	private boolean enqueue(Player player, Pending pending)
+	{
+		if(stopped)
+		{
+			pending.sent.setException(new RejectedExecutionException("The chat has been stopped"));
+			return false;
+		}
+		Pending victim;
+		// A queue failed meanwhile refuses the message: a new one is created
+		while((victim = queue(player).add(pending, maxQueueDepth)) == PlayerQueue.DEAD);
+		if(victim != null)
+		{
+			dropped.incrementAndGet();
+			victim.drop();
+		}
+		if(stopped)
+		{
+			// Stopped meanwhile: the queue may already have been failed
+			pending.sent.setException(new RejectedExecutionException("The chat has been stopped"));
+			return false;
+		}
+		return victim != pending;
+	}
+
+	private PlayerQueue queue(Player player)
+	{
+		UUID id = player.getUniqueId();
+		PlayerQueue queue = queues.get(id);
+		while(queue == null || queue.isDead())
+		{
+			PlayerQueue created = new PlayerQueue(id, player.getName());
+			if(queue == null ? queues.putIfAbsent(id, created) == null : queues.replace(id, queue, created))
+				queue = created;
+			else
+				queue = queues.get(id);
+		}
+		return queue;
+	}
+
+	/**
+	 * Writes the messages ready to be sent to the connection of their
+	 * player, looked up by its unique id so that a player who logged in again
+	 * gets them on its new connection. Called once per tick once started; to
+	 * be called on the main thread.
+	 */
+	public void flush()
+	{
+		for(PlayerQueue queue : queues.values())
+		{
+			Player player = Bukkit.getPlayer(queue.id);
+			if(player == null || !player.isOnline())
+			{
+				// Failed before being removed, so that a message added meanwhile is refused
+				queue.fail(new IllegalStateException(queue.name + " is offline"));
+				queues.remove(queue.id, queue);
+			}
+			else
+				queue.flush(player);
+		}
+	}
+
+	/**
+	 * A message being serialized and the future of its sending
+	 */
+	private static final class Pending
+	{
+		final MessagePriority priority;
+		final SettableFuture<Void> sent = SettableFuture.create();
+		private volatile ListenableFuture<PreparedMessage[]> messages;
+
+		Pending(MessagePriority priority)
+		{
+			this.priority = priority;
+		}
+
+		void setMessages(ListenableFuture<PreparedMessage[]> messages)
+		{
+			this.messages = messages;
+			if(sent.isDone())
+				messages.cancel(false);
+		}
+
+		boolean isReady()
+		{
+			ListenableFuture<PreparedMessage[]> messages = this.messages;
+			return messages != null && messages.isDone();
+		}
+
+		void drop()
+		{
+			sent.cancel(false);
+			ListenableFuture<PreparedMessage[]> messages = this.messages;
+			if(messages != null)
+				messages.cancel(false);
+		}
+	}
+
+	/**
+	 * The messages of a player, in the order they were sent
+	 */
+	private static final class PlayerQueue
+	{
+		/**
+		 * Returned by {@link #add(Pending, int)} once the queue has failed
+		 */
+		static final Pending DEAD = new Pending(MessagePriority.LOW);
+
+		final UUID id;
+		final String name;
+		private final Deque<Pending> pendings = new ArrayDeque<Pending>();
+		private long dropped;
+		private boolean dead;
+
+		PlayerQueue(UUID id, String name)
+		{
+			this.id = id;
+			this.name = name;
+		}
+
+		/**
+		 * Adds a message, dropping one if the queue is full
+		 *
+		 * @return the message dropped, the one added included, null, or
+		 *         {@link #DEAD} if nothing was added as the queue has failed
+		 */
+		synchronized Pending add(Pending pending, int maxDepth)
+		{
+			if(dead)
+				return DEAD;
+			Pending victim = null;
+			if(pendings.size() >= maxDepth)
+			{
+				victim = pending;
+				for(Pending queued : pendings)
+				{
+					if(queued.priority.compareTo(victim.priority) < 0 || (victim == pending && queued.priority == pending.priority))
+						victim = queued;
+				}
+				dropped++;
+				if(victim == pending)
+					return victim;
+				pendings.remove(victim);
+			}
+			pendings.add(pending);
+			return victim;
+		}
+
+		synchronized boolean isDead()
+		{
+			return dead;
+		}
+
+		synchronized int depth()
+		{
+			return pendings.size();
+		}
+
+		synchronized long dropped()
+		{
+			return dropped;
+		}
+
+		private synchronized boolean hasReady()
+		{
+			Pending pending = pendings.peek();
+			return pending != null && pending.isReady();
+		}
+
+		private synchronized Pending pollReady()
+		{
+			return hasReady() ? pendings.poll() : null;
+		}
+
+		/**
+		 * Writes the messages up to the first one not serialized yet, then
+		 * flushes the connection once. Nothing is written while the
+		 * connection can't keep up.
+		 */
+		void flush(Player player)
+		{
+			if(!hasReady())
+				return;
+			Object channel = NmsChatPacket.channel(player);
+			if(!NmsChatPacket.isWritable(channel))
+				return;
+
+			boolean written = false;
+			Pending pending;
+			while((pending = pollReady()) != null)
+			{
+				PreparedMessage[] messages;
+				try
+				{
+					messages = Uninterruptibles.getUninterruptibly(pending.messages);
+				}
+				catch(ExecutionException e)
+				{
+					pending.sent.setException(e.getCause());
+					continue;
+				}
+				catch(CancellationException e)
+				{
+					pending.sent.cancel(false);
+					continue;
+				}
+
+				for(PreparedMessage message : messages)
+				{
+					for(int i = 0; i < message.size(); i++)
+					{
+						if(NmsChatPacket.write(channel, message.getPacket(i)))
+						{
+							written = true;
+							ChatMetrics.sent(message.getPosition(), message.getJson(i).length());
+						}
+						else
+							message.send(player, i);
+					}
+				}
+				pending.sent.set(null);
+			}
+			if(written)
+				NmsChatPacket.flush(channel);
+		}
+
+		/**
+		 * Fails the messages queued, the queue refusing the next ones
+		 */
+		void fail(Throwable cause)
+		{
+			List<Pending> failed;
+			synchronized(this)
+			{
+				dead = true;
+				failed = new ArrayList<Pending>(pendings);
+				pendings.clear();
+			}
+			for(Pending pending : failed)
+			{
+				pending.sent.setException(cause);
+				pending.drop();
+			}
+		}
+	}
+}
@@ -18,18 +18,37 @@ package com.github.hexocraftapi.chat;
 
 import com.github.hexocraftapi.chat.Serializer.ComponentSerializer;
 import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.metrics.ChatMetrics;
 import com.github.hexocraftapi.nms.NmsChatMessageType;
 import com.github.hexocraftapi.nms.packet.NmsPacketPlayOutChat;
-import org.bukkit.ChatColor;
+import com.google.common.base.Preconditions;
 import org.bukkit.entity.Player;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class Chat
 {
 	public static int NO_WRAP_CHAT_PAGE_WIDTH = 55;
 	public static int CHAT_PAGE_HEIGHT = 10;
+	public static int CHAT_PAGE_PIXEL_WIDTH = 320;
+	/**
+	 * Longest json the client accepts in a chat packet
+	 */
+	public static final int MAX_JSON_LENGTH = 32767;
+	/**
+	 * What is done with a message longer than {@link #MAX_JSON_LENGTH} when
+	 * no policy is given. Such a message used to be sent as is, getting the
+	 * player kicked; it is now split into several packets. Pass
+	 * {@link OversizePolicy#REJECT} to get an exception instead.
+	 */
+	public static final OversizePolicy OVERSIZE_POLICY = OversizePolicy.SPLIT;
+	/**
+	 * Action bar channel, sending only the latest message of a player and
+	 * only when it changes. Sends right away until started with a plugin.
+	 */
+	public static final ActionBarChannel ACTION_BAR = new ActionBarChannel();
 
 	public static void sendMessage(Player player, BaseComponent message)
 	{
@@ -46,6 +65,19 @@ public class Chat
 		sendJsonMessage(ChatMessageType.CHAT, player, jsonMessage);
 	}
 
+	/**
+	 * Sends a text using the old formatting system that used
+	 * {@link org.bukkit.ChatColor#COLOR_CHAR}. The json is written straight
+	 * from the text, without building its components.
+	 *
+	 * @param player The player receiving the message.
+	 * @param legacyMessage The text of the message.
+	 */
+	public static void sendLegacyMessage(Player player, String legacyMessage)
+	{
+		sendLegacyMessage(ChatMessageType.CHAT, player, legacyMessage);
+	}
+
 	public static void sendMessage(ChatMessageType position, Player player, BaseComponent message)
 	{
 		sendMessage(position, player, new BaseComponent[]{message});
@@ -53,12 +85,145 @@ public class Chat
 
 	public static void sendMessage(ChatMessageType position, Player player, BaseComponent[] messages)
 	{
-		NmsPacketPlayOutChat.send(player, (byte)position.ordinal(), ComponentSerializer.toString(messages));
+		sendMessage(position, player, messages, OVERSIZE_POLICY);
+	}
+
+	/**
+	 * Sends a message, enforcing the length limit of the client. The message
+	 * is serialized once; only a message found too long is measured again,
+	 * to plan how it is split.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param player The player receiving the message.
+	 * @param messages The message.
+	 * @param policy What to do if the json is longer than {@link #MAX_JSON_LENGTH}.
+	 * @throws IllegalArgumentException if the message is rejected or can't be split.
+	 */
+	public static void sendMessage(ChatMessageType position, Player player, BaseComponent[] messages, OversizePolicy policy)
+	{
+		send(position, player, PreparedMessage.fit(ComponentSerializer.toString(messages), messages, policy));
+	}
+
+	private static void send(ChatMessageType position, Player player, String[] jsons)
+	{
+		for(String json : jsons)
+		{
+			NmsPacketPlayOutChat.send(player, (byte)position.ordinal(), json);
+			ChatMetrics.sent(position, json.length());
+		}
+	}
+
+	/**
+	 * Splits a message longer than {@link #MAX_JSON_LENGTH} according to a
+	 * policy.
+	 */
+	static List<BaseComponent[]> split(BaseComponent[] messages, OversizePolicy policy)
+	{
+		Preconditions.checkArgument(policy != OversizePolicy.REJECT, "The json of the message is longer than %s characters", MAX_JSON_LENGTH);
+		List<BaseComponent[]> parts = BaseComponent.split(MAX_JSON_LENGTH, messages);
+		if(policy == OversizePolicy.TRUNCATE)
+			parts = parts.subList(0, 1);
+		return parts;
 	}
 
 	public static void sendJsonMessage(ChatMessageType position, Player player, String jsonMessage)
 	{
-		NmsPacketPlayOutChat.send(player, (byte)position.ordinal(), jsonMessage);
+		sendJsonMessage(position, player, jsonMessage, OVERSIZE_POLICY);
+	}
+
+	/**
+	 * Sends a json message, enforcing the length limit of the client. A json
+	 * too long is parsed to be split.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param player The player receiving the message.
+	 * @param jsonMessage The json message.
+	 * @param policy What to do if the json is longer than {@link #MAX_JSON_LENGTH}.
+	 * @throws IllegalArgumentException if the message is rejected or can't be split.
+	 */
+	public static void sendJsonMessage(ChatMessageType position, Player player, String jsonMessage, OversizePolicy policy)
+	{
+		send(position, player, PreparedMessage.fit(jsonMessage, null, policy));
+	}
+
+	public static void sendLegacyMessage(ChatMessageType position, Player player, String legacyMessage)
+	{
+		sendJsonMessage(position, player, ComponentSerializer.legacyToJson(legacyMessage));
+	}
+
+	/**
+	 * Sends an action bar message through {@link #ACTION_BAR}: an update
+	 * replaces the one not sent yet and a message the same as the last one
+	 * sent is skipped.
+	 *
+	 * @param player The player receiving the message.
+	 * @param message The message, not to be modified afterwards.
+	 */
+	public static void sendActionBar(Player player, BaseComponent... message)
+	{
+		ACTION_BAR.send(player, message);
+	}
+
+	public static void sendMessage(Player player, PreparedMessage message)
+	{
+		message.send(player);
+	}
+
+	/**
+	 * Sends a message to several players. The message is serialized and its
+	 * packet built only once.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param players The players receiving the message.
+	 * @param messages The message.
+	 */
+	public static void broadcast(ChatMessageType position, Collection<? extends Player> players, BaseComponent... messages)
+	{
+		broadcast(position, players, null, messages);
+	}
+
+	/**
+	 * Sends a message to the players having a permission. The message is
+	 * serialized and its packet built only once.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param players The players that may receive the message.
+	 * @param permission The permission needed to receive the message, or null.
+	 * @param messages The message.
+	 */
+	public static void broadcast(ChatMessageType position, Collection<? extends Player> players, String permission, BaseComponent... messages)
+	{
+		PreparedMessage message = null;
+		for(Player player : players)
+		{
+			if(permission != null && !player.hasPermission(permission))
+				continue;
+			// Serialized and built for the first recipient only
+			if(message == null)
+				message = new PreparedMessage(position, messages);
+			message.send(player);
+		}
+	}
+
+	/**
+	 * Sends a json message to the players having a permission.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param players The players that may receive the message.
+	 * @param permission The permission needed to receive the message, or null.
+	 * @param jsonMessage The json message.
+	 */
+	public static void broadcastJson(ChatMessageType position, Collection<? extends Player> players, String permission, String jsonMessage)
+	{
+		PreparedMessage message = null;
+		for(Player player : players)
+		{
+			if(permission != null && !player.hasPermission(permission))
+				continue;
+			if(message == null)
+				message = new PreparedMessage(position, jsonMessage);
+			message.send(player);
+		}
 	}
 
 	/**
@@ -70,87 +235,67 @@ public class Chat
 	 * @return An array of word-wrapped lines.
 	 */
 	public static String[] wordWrap(String rawString, int lineLength) {
+		List<String> lines = new ArrayList<String>();
+		wordWrap(rawString, lineLength, lines);
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Breaks a raw string up into a series of lines, added to a collection.
+	 * Words are wrapped using spaces as decimeters and the newline character
+	 * is respected. Color codes don't count in the length of a line, and each
+	 * line starts with the color and formats active at the end of the
+	 * previous one.
+	 *
+	 * @param rawString The raw string to break.
+	 * @param lineLength The length of a line of text.
+	 * @param lines The collection the word-wrapped lines are added to.
+	 */
+	public static void wordWrap(String rawString, int lineLength, Collection<? super String> lines) {
 		// A null string is a single line
 		if (rawString == null) {
-			return new String[] {""};
+			lines.add("");
+			return;
 		}
 
 		// A string shorter than the lineWidth is a single line
-		if (rawString.length() <= lineLength && !rawString.contains("\n")) {
-			return new String[] {rawString};
+		if (rawString.length() <= lineLength && rawString.indexOf('\n') < 0) {
+			lines.add(rawString);
+			return;
 		}
 
-		char[] rawChars = (rawString + ' ').toCharArray(); // add a trailing space to trigger pagination
-		StringBuilder word = new StringBuilder();
-		StringBuilder line = new StringBuilder();
-		List<String> lines = new LinkedList<String>();
-		int lineColorChars = 0;
-
-		for (int i = 0; i < rawChars.length; i++) {
-			char c = rawChars[i];
-
-			// skip chat color modifiers
-			if (c == ChatColor.COLOR_CHAR) {
-				word.append(ChatColor.getByChar(rawChars[i + 1]));
-				lineColorChars += 2;
-				i++; // Eat the next character as we have already processed it
-				continue;
-			}
-
-			if (c == ' ' || c == '\n') {
-				if (line.length() == 0 && word.length() > lineLength) { // special case: extremely long word begins a line
-					for (String partialWord : word.toString().split("(?<=\\G.{" + lineLength + "})")) {
-						lines.add(partialWord);
-					}
-				} else if (line.length() + 1 + word.length() - lineColorChars == lineLength) { // Line exactly the correct length...newline
-					line.append(' ');
-					line.append(word);
-					lines.add(line.toString());
-					line = new StringBuilder();
-					lineColorChars = 0;
-				} else if (line.length() + 1 + word.length() - lineColorChars > lineLength) { // Line too long...break the line
-					/*for (String partialWord : word.toString().split("(?<=\\G.{" + lineLength + "})")) {
-						lines.add(line.toString());
-						line = new StringBuilder(partialWord);
-					}*/
-					lines.add(line.toString());
-					line = new StringBuilder(word);
-					lineColorChars = 0;
-				} else {
-					if (line.length() > 0) {
-						line.append(' ');
-					}
-					line.append(word);
-				}
-				word = new StringBuilder();
-
-				if (c == '\n') { // Newline forces the line to flush
-					lines.add(line.toString());
-					line = new StringBuilder();
-				}
-			} else {
-				word.append(c);
-			}
-		}
-
-		if(line.length() > 0) { // Only add the last line if there is anything to add
-			lines.add(line.toString());
-		}
+		Preconditions.checkArgument(lineLength > 0, "lineLength must be positive");
+		new WordWrapper(rawString, lineLength, lines).wrap();
+	}
 
-		// Iterate over the wrapped lines, applying the last color from one line to the beginning of the next
-		if (lines.get(0).length() == 0 || lines.get(0).charAt(0) != ChatColor.COLOR_CHAR) {
-			lines.set(0, ChatColor.WHITE + lines.get(0));
-		}
-		for (int i = 1; i < lines.size(); i++) {
-			final String pLine = lines.get(i-1);
-			final String subLine = lines.get(i);
-
-			char color = pLine.charAt(pLine.lastIndexOf(ChatColor.COLOR_CHAR) + 1);
-			if (subLine.length() == 0 || subLine.charAt(0) != ChatColor.COLOR_CHAR) {
-				lines.set(i, ChatColor.getByChar(color) + subLine);
-			}
-		}
+	/**
+	 * Breaks components up into a series of lines no wider than a number of
+	 * pixels of the default font. Words are wrapped using spaces as
+	 * decimeters and the newline character is respected.
+	 *
+	 * @param components The components to break.
+	 * @param pixelWidth The width of a line in pixels.
+	 * @return A list of word-wrapped lines.
+	 */
+	public static List<BaseComponent[]> wordWrap(BaseComponent[] components, int pixelWidth) {
+		List<BaseComponent[]> lines = new ArrayList<BaseComponent[]>();
+		wordWrap(components, pixelWidth, lines);
+		return lines;
+	}
 
-		return lines.toArray(new String[lines.size()]);
+	/**
+	 * Breaks components up into a series of lines no wider than a number of
+	 * pixels of the default font, added to a collection. Each line is made of
+	 * text components carrying the color, decorations, insertion and events
+	 * the text had in the original components, so a link cut over two lines
+	 * stays clickable on both.
+	 *
+	 * @param components The components to break.
+	 * @param pixelWidth The width of a line in pixels.
+	 * @param lines The collection the word-wrapped lines are added to.
+	 */
+	public static void wordWrap(BaseComponent[] components, int pixelWidth, Collection<? super BaseComponent[]> lines) {
+		Preconditions.checkArgument(pixelWidth > 0, "pixelWidth must be positive");
+		new ComponentWrapper(pixelWidth, lines).wrap(components);
 	}
 }
@@ -53,11 +53,17 @@ public enum ChatColorName
 	private final String name;
 
 	private static final Map<ChatColor, String> BY_COLOR = new HashMap<ChatColor, String>();
+	private static final ChatColor[] BY_CHAR = new ChatColor[128];
 
 	static
 	{
 		for ( ChatColorName namedColor : values() )
 			BY_COLOR.put( namedColor.color, namedColor.name);
+		for ( ChatColor color : ChatColor.values() )
+		{
+			BY_CHAR[Character.toLowerCase(color.getChar())] = color;
+			BY_CHAR[Character.toUpperCase(color.getChar())] = color;
+		}
 	}
 
 
@@ -71,4 +77,16 @@ public enum ChatColorName
 	{
 		return BY_COLOR.get( color );
 	}
+
+	/**
+	 * Gets the color or format represented by a code, in lower or upper case,
+	 * without going through a map.
+	 *
+	 * @param code The code following {@link ChatColor#COLOR_CHAR}.
+	 * @return The color or format, or null if the code is not valid.
+	 */
+	public static ChatColor getByChar(char code)
+	{
+		return code < BY_CHAR.length ? BY_CHAR[code] : null;
+	}
 }
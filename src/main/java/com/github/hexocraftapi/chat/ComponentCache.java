@@ -0,0 +1,262 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.Serializer.ComponentSerializer;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.metrics.ChatMetrics;
+import com.github.hexocraftapi.chat.metrics.Gauge;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded cache of {@link TextComponent#fromLegacyText(String)} and
+ * {@link ComponentSerializer#parse(String)} results, keyed by the text parsed.
+ * <p>
+ * The cache is meant for the texts parsed over and over (join messages,
+ * prefixes, rank tags...): a text seen again costs a hash lookup instead of a
+ * parse. Each of the two caches is bounded by the total length of the texts
+ * it holds and by its number of texts, the least recently used texts being
+ * evicted first, and can be used from any thread. Concurrent misses on the
+ * same text wait for a single parse.
+ * </p>
+ * <p>
+ * The length bound only counts the texts, not the components they give,
+ * which usually take several times more memory: choose it, or the number of
+ * texts, from the memory the cache may use. Both bounds are split between
+ * the segments of the underlying Guava cache, so texts may be evicted
+ * before a cache is full.
+ * </p>
+ * <p>
+ * The components returned are {@linkplain BaseComponent#freeze() frozen}, so
+ * a caller can't alter what the next caller gets. Only the array is copied on
+ * each call; use {@link BaseComponent#duplicate()} to get components that can
+ * be modified. Adding them to another component, or passing them to
+ * {@link TextComponent#TextComponent(BaseComponent...)}, adds mutable copies.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public class ComponentCache
+{
+	private final Cache<String, BaseComponent[]> legacy;
+	private final Cache<String, BaseComponent[]> json;
+
+	/**
+	 * Creates a ComponentCache.
+	 *
+	 * @param maximumLength The maximum total length of the texts kept by each
+	 *                      of the legacy and json caches.
+	 */
+	public ComponentCache(long maximumLength)
+	{
+		this(maximumLength, maximumLength);
+	}
+
+	/**
+	 * Creates a ComponentCache.
+	 *
+	 * @param maximumLength The maximum total length of the texts kept by each
+	 *                      of the legacy and json caches.
+	 * @param maximumSize The maximum number of texts kept by each of the
+	 *                    legacy and json caches.
+	 */
+	public ComponentCache(long maximumLength, long maximumSize)
+	{
+		Preconditions.checkArgument(maximumLength >= 0, "maximumLength can't be negative");
+		Preconditions.checkArgument(maximumSize >= 0, "maximumSize can't be negative");
+		this.legacy = newCache(maximumLength, maximumSize);
+		this.json = newCache(maximumLength, maximumSize);
+	}
+
+	private static Cache<String, BaseComponent[]> newCache(long maximumLength, long maximumSize)
+	{
+		if(maximumSize == 0)
+			maximumLength = 0;
+
+		// A cache can't be bounded by both weight and size: each text weighs
+		// at least maximumLength / maximumSize instead, rounded up, so no
+		// more than maximumSize texts fit in maximumLength.
+		final int minimumWeight = (int)Math.min(Integer.MAX_VALUE, Math.max(1, (maximumLength + maximumSize - 1) / Math.max(1, maximumSize)));
+		return CacheBuilder.newBuilder()
+		                   .maximumWeight(maximumLength)
+		                   .weigher(new Weigher<String, BaseComponent[]>()
+		                   {
+			                   @Override
+			                   public int weigh(String key, BaseComponent[] value)
+			                   {
+				                   return Math.max(minimumWeight, key.length());
+			                   }
+		                   })
+		                   .recordStats()
+		                   .build();
+	}
+
+	/**
+	 * Returns the components of a text using the old formatting system, as
+	 * {@link TextComponent#fromLegacyText(String)} would.
+	 *
+	 * @param message The text to convert.
+	 * @return The frozen components needed to print the message to the client.
+	 */
+	public BaseComponent[] fromLegacyText(final String message)
+	{
+		return get(legacy, message, new Callable<BaseComponent[]>()
+		{
+			@Override
+			public BaseComponent[] call()
+			{
+				return BaseComponent.freeze(TextComponent.fromLegacyText(message));
+			}
+		});
+	}
+
+	/**
+	 * Returns the components of a json message, as
+	 * {@link ComponentSerializer#parse(String)} would. Invalid json is not
+	 * cached.
+	 *
+	 * @param jsonMessage The json message.
+	 * @return The frozen components.
+	 * @throws com.google.gson.JsonParseException if the json is not a valid message
+	 */
+	public BaseComponent[] parse(final String jsonMessage)
+	{
+		return get(json, jsonMessage, new Callable<BaseComponent[]>()
+		{
+			@Override
+			public BaseComponent[] call()
+			{
+				return BaseComponent.freeze(ComponentSerializer.parse(jsonMessage));
+			}
+		});
+	}
+
+	/**
+	 * Returns a copy of the cached components of a text, loading them once
+	 * if they are missing, and rethrows what the loader throws.
+	 */
+	private static BaseComponent[] get(Cache<String, BaseComponent[]> cache, String key, Callable<BaseComponent[]> loader)
+	{
+		try
+		{
+			return cache.get(key, loader).clone();
+		}
+		catch(ExecutionException | UncheckedExecutionException | ExecutionError e)
+		{
+			// Throwables.throwIfUnchecked, missing from the Guava of older servers
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new UncheckedExecutionException(cause);
+		}
+	}
+
+	/**
+	 * @return the hits, misses and evictions of {@link #fromLegacyText(String)}
+	 */
+	public CacheStats legacyStats() {
+		return this.legacy.stats();
+	}
+
+	/**
+	 * @return the hits, misses and evictions of {@link #parse(String)}
+	 */
+	public CacheStats jsonStats() {
+		return this.json.stats();
+	}
+
+	/**
+	 * @return the number of texts cached
+	 */
+	public long size() {
+		return this.legacy.size() + this.json.size();
+	}
+
+	/**
+	 * Registers the hits and misses of the cache, and its size, as gauges of
+	 * {@link ChatMetrics}: {@code <name>.legacy.hits}, {@code <name>.legacy.misses},
+	 * {@code <name>.json.hits}, {@code <name>.json.misses} and {@code <name>.size}.
+	 *
+	 * @param name The prefix of the gauges.
+	 * @return This ComponentCache.
+	 */
+	public ComponentCache registerMetrics(String name)
+	{
+		ChatMetrics.gauge(name + ".legacy.hits", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return legacy.stats().hitCount();
+			}
+		});
+		ChatMetrics.gauge(name + ".legacy.misses", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return legacy.stats().missCount();
+			}
+		});
+		ChatMetrics.gauge(name + ".json.hits", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return json.stats().hitCount();
+			}
+		});
+		ChatMetrics.gauge(name + ".json.misses", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return json.stats().missCount();
+			}
+		});
+		ChatMetrics.gauge(name + ".size", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return size();
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Empties the cache.
+	 */
+	public void invalidateAll()
+	{
+		legacy.invalidateAll();
+		json.invalidateAll();
+	}
+}
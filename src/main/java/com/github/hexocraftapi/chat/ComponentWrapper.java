@@ -0,0 +1,312 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.Style;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Pixel width word wrapper for components, used by
+ * {@link Chat#wordWrap(BaseComponent[], int, Collection)}.
+ * <p>
+ * The component tree is walked once. Each text is cut into pieces at spaces
+ * and line breaks, each piece keeping the resolved formatting and the events
+ * of its component, and the pieces of a line are turned back into
+ * {@link TextComponent}s. Widths come from the default font, bold text being
+ * one pixel wider per character.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+final class ComponentWrapper
+{
+	/**
+	 * Width of a character of the default font, spacing included, for
+	 * characters outside the table
+	 */
+	private static final int DEFAULT_WIDTH = 6;
+	private static final byte[] WIDTHS = new byte[128];
+
+	static
+	{
+		for(int c = 0; c < WIDTHS.length; c++)
+			WIDTHS[c] = DEFAULT_WIDTH;
+		set(2, "!,.:;i|'");
+		set(3, "`l");
+		set(4, " I[]t");
+		set(5, "\"()*<>fk{}");
+		set(7, "@~");
+	}
+
+	private static void set(int width, String chars)
+	{
+		for(int i = 0; i < chars.length(); i++)
+			WIDTHS[chars.charAt(i)] = (byte)width;
+	}
+
+	/**
+	 * Returns the width of a character in pixels, spacing included.
+	 *
+	 * @param c The character.
+	 * @param bold Whether the character is bold.
+	 * @return The width of the character.
+	 */
+	static int width(char c, boolean bold)
+	{
+		int width = c < WIDTHS.length ? WIDTHS[c] : DEFAULT_WIDTH;
+		return bold ? width + 1 : width;
+	}
+
+	/**
+	 * Part of the text of a component
+	 */
+	private static final class Piece
+	{
+		final String text;
+		final int start;
+		final int end;
+		final Style style;
+		final boolean bold;
+		final int width;
+
+		Piece(String text, int start, int end, Style style, boolean bold, int width)
+		{
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			this.style = style;
+			this.bold = bold;
+			this.width = width;
+		}
+	}
+
+	private final int maxWidth;
+	private final Collection<? super BaseComponent[]> lines;
+	private int lineCount;
+
+	private final List<Piece> line = new ArrayList<Piece>();
+	private int lineWidth;
+	private final List<Piece> word = new ArrayList<Piece>();
+	private int wordWidth;
+	/**
+	 * Space waiting to be written before the next word of the line
+	 */
+	private Piece space;
+
+	ComponentWrapper(int maxWidth, Collection<? super BaseComponent[]> lines)
+	{
+		this.maxWidth = maxWidth;
+		this.lines = lines;
+	}
+
+	void wrap(BaseComponent[] components)
+	{
+		for(BaseComponent component : components)
+		{
+			if(component != null)
+				wrap(component, component.getResolvedStyle(), null, null, null);
+		}
+		endWord();
+		if(!line.isEmpty() || lineCount == 0)
+			flush();
+	}
+
+	private void wrap(BaseComponent component, Style resolved, ClickEvent clickEvent, HoverEvent hoverEvent, String insertion)
+	{
+		if(component.getClickEvent() != null)
+			clickEvent = component.getClickEvent();
+		if(component.getHoverEvent() != null)
+			hoverEvent = component.getHoverEvent();
+		if(component.getInsertion() != null)
+			insertion = component.getInsertion();
+
+		if(component instanceof TextComponent)
+		{
+			Style style = Style.of(resolved.getColor(),
+			                       trueOrNull(resolved.isBold()),
+			                       trueOrNull(resolved.isItalic()),
+			                       trueOrNull(resolved.isUnderlined()),
+			                       trueOrNull(resolved.isStrikethrough()),
+			                       trueOrNull(resolved.isObfuscated()))
+			                   .withInsertion(insertion)
+			                   .withClickEvent(clickEvent)
+			                   .withHoverEvent(hoverEvent);
+			text(((TextComponent)component).getText(), style, resolved.isBold());
+		}
+
+		if(component.getExtra() != null)
+		{
+			for(BaseComponent extra : component.getExtra())
+				wrap(extra, extra.isFrozen() ? extra.getResolvedStyle() : extra.getStyle().resolve(resolved), clickEvent, hoverEvent, insertion);
+		}
+	}
+
+	private static Boolean trueOrNull(Boolean value)
+	{
+		return value ? Boolean.TRUE : null;
+	}
+
+	private void text(String text, Style style, boolean bold)
+	{
+		if(text == null)
+			return;
+
+		int start = 0;
+		int width = 0;
+		int length = text.length();
+		for(int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if(c == ' ' || c == '\n')
+			{
+				if(i > start)
+					addToWord(new Piece(text, start, i, style, bold, width));
+				endWord();
+				if(c == '\n')
+				{
+					space = null;
+					flush();
+				}
+				else
+				{
+					// Several spaces in a row are kept inside a line
+					if(space != null && !line.isEmpty() && lineWidth + space.width <= maxWidth)
+						addToLine(space);
+					space = new Piece(text, i, i + 1, style, bold, width(' ', bold));
+				}
+				start = i + 1;
+				width = 0;
+			}
+			else if(c == ChatColor.COLOR_CHAR && i + 1 < length)
+				i++;
+			else
+				width += width(c, bold);
+		}
+		if(length > start)
+			addToWord(new Piece(text, start, length, style, bold, width));
+	}
+
+	private void addToWord(Piece piece)
+	{
+		word.add(piece);
+		wordWidth += piece.width;
+	}
+
+	private void addToLine(Piece piece)
+	{
+		line.add(piece);
+		lineWidth += piece.width;
+	}
+
+	private void endWord()
+	{
+		if(word.isEmpty())
+			return;
+
+		int spaceWidth = space != null && !line.isEmpty() ? space.width : 0;
+		if(lineWidth + spaceWidth + wordWidth <= maxWidth)
+		{
+			if(spaceWidth > 0)
+				addToLine(space);
+			for(Piece piece : word)
+				addToLine(piece);
+		}
+		else
+		{
+			if(!line.isEmpty())
+				flush();
+			if(wordWidth <= maxWidth)
+			{
+				for(Piece piece : word)
+					addToLine(piece);
+			}
+			else
+				split();
+		}
+		space = null;
+		word.clear();
+		wordWidth = 0;
+	}
+
+	/**
+	 * Splits a word wider than a line over several lines
+	 */
+	private void split()
+	{
+		for(Piece piece : word)
+		{
+			int from = piece.start;
+			int width = 0;
+			for(int i = piece.start; i < piece.end; i++)
+			{
+				char c = piece.text.charAt(i);
+				if(c == ChatColor.COLOR_CHAR && i + 1 < piece.end)
+				{
+					i++;
+					continue;
+				}
+				int w = width(c, piece.bold);
+				if(lineWidth + width + w > maxWidth && (i > from || !line.isEmpty()))
+				{
+					if(i > from)
+						addToLine(new Piece(piece.text, from, i, piece.style, piece.bold, width));
+					flush();
+					from = i;
+					width = 0;
+				}
+				width += w;
+			}
+			if(piece.end > from)
+				addToLine(new Piece(piece.text, from, piece.end, piece.style, piece.bold, width));
+		}
+	}
+
+	private void flush()
+	{
+		List<BaseComponent> components = new ArrayList<BaseComponent>(line.size());
+		for(int i = 0; i < line.size(); )
+		{
+			Piece first = line.get(i);
+			int end = first.end;
+
+			// Merge the pieces following each other in the same text
+			for(i++; i < line.size(); i++)
+			{
+				Piece next = line.get(i);
+				if(next.text != first.text || next.style != first.style || next.start != end)
+					break;
+				end = next.end;
+			}
+
+			TextComponent component = new TextComponent(first.text.substring(first.start, end));
+			component.setStyle(first.style);
+			components.add(component);
+		}
+		lines.add(components.toArray(new BaseComponent[components.size()]));
+		lineCount++;
+		line.clear();
+		lineWidth = 0;
+	}
+}
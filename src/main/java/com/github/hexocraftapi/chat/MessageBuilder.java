@@ -17,6 +17,7 @@ package com.github.hexocraftapi.chat;
  */
 
 import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.Style;
 import com.github.hexocraftapi.chat.component.TextComponent;
 import com.github.hexocraftapi.chat.event.ClickEvent;
 import com.github.hexocraftapi.chat.event.HoverEvent;
@@ -42,12 +43,19 @@ import java.util.List;
  * {@link ChatColor#BLUE} because append copies the previous
  * part's formatting
  * </p>
+ * <p>
+ * Parts are kept as a text and an immutable {@link Style} until
+ * {@link #create()} turns them into components, so appending a part or
+ * copying a builder doesn't copy any component.
+ * </p>
  */
 public class MessageBuilder
 {
 
-    private TextComponent current;
-    private final List<BaseComponent> parts = new ArrayList<BaseComponent>();
+    private String currentText;
+    private Style currentStyle = Style.EMPTY;
+    private final List<String> texts;
+    private final List<Style> styles;
 
     /**
      * Creates a MessageBuilder from the other given MessageBuilder to clone
@@ -57,11 +65,10 @@ public class MessageBuilder
      */
     public MessageBuilder(MessageBuilder original)
     {
-        current = new TextComponent( original.current );
-        for ( BaseComponent baseComponent : original.parts )
-        {
-            parts.add( baseComponent.duplicate() );
-        }
+        currentText = original.currentText;
+        currentStyle = original.currentStyle;
+        texts = new ArrayList<String>( original.texts );
+        styles = new ArrayList<Style>( original.styles );
     }
 
     /**
@@ -69,7 +76,7 @@ public class MessageBuilder
      */
     public MessageBuilder()
     {
-        current = new TextComponent("");
+        this( "" );
     }
 
     /**
@@ -79,7 +86,9 @@ public class MessageBuilder
      */
     public MessageBuilder(String text)
     {
-        current = new TextComponent( text );
+        currentText = text;
+        texts = new ArrayList<String>();
+        styles = new ArrayList<Style>();
     }
 
     /**
@@ -104,10 +113,10 @@ public class MessageBuilder
      */
     public MessageBuilder append(String text, FormatRetention retention)
     {
-        parts.add( current );
+        texts.add( currentText );
+        styles.add( currentStyle );
 
-        current = new TextComponent( current );
-        current.setText( text );
+        currentText = text;
         retain( retention );
 
         return this;
@@ -121,7 +130,7 @@ public class MessageBuilder
      */
     public MessageBuilder color(ChatColor color)
     {
-        current.setColor( color );
+        currentStyle = currentStyle.withColor( color );
         return this;
     }
 
@@ -133,7 +142,7 @@ public class MessageBuilder
      */
     public MessageBuilder bold(boolean bold)
     {
-        current.setBold( bold );
+        currentStyle = currentStyle.withBold( bold );
         return this;
     }
 
@@ -145,7 +154,7 @@ public class MessageBuilder
      */
     public MessageBuilder italic(boolean italic)
     {
-        current.setItalic( italic );
+        currentStyle = currentStyle.withItalic( italic );
         return this;
     }
 
@@ -157,7 +166,7 @@ public class MessageBuilder
      */
     public MessageBuilder underlined(boolean underlined)
     {
-        current.setUnderlined( underlined );
+        currentStyle = currentStyle.withUnderlined( underlined );
         return this;
     }
 
@@ -169,7 +178,7 @@ public class MessageBuilder
      */
     public MessageBuilder strikethrough(boolean strikethrough)
     {
-        current.setStrikethrough( strikethrough );
+        currentStyle = currentStyle.withStrikethrough( strikethrough );
         return this;
     }
 
@@ -181,7 +190,7 @@ public class MessageBuilder
      */
     public MessageBuilder obfuscated(boolean obfuscated)
     {
-        current.setObfuscated( obfuscated );
+        currentStyle = currentStyle.withObfuscated( obfuscated );
         return this;
     }
 
@@ -193,7 +202,7 @@ public class MessageBuilder
      */
     public MessageBuilder insertion(String insertion)
     {
-        current.setInsertion( insertion );
+        currentStyle = currentStyle.withInsertion( insertion );
         return this;
     }
 
@@ -205,7 +214,7 @@ public class MessageBuilder
      */
     public MessageBuilder event(ClickEvent clickEvent)
     {
-        current.setClickEvent( clickEvent );
+        currentStyle = currentStyle.withClickEvent( clickEvent );
         return this;
     }
 
@@ -217,7 +226,7 @@ public class MessageBuilder
      */
     public MessageBuilder event(HoverEvent hoverEvent)
     {
-        current.setHoverEvent( hoverEvent );
+        currentStyle = currentStyle.withHoverEvent( hoverEvent );
         return this;
     }
 
@@ -239,25 +248,21 @@ public class MessageBuilder
      */
     public MessageBuilder retain(FormatRetention retention)
     {
-        BaseComponent previous = current;
-
         switch ( retention )
         {
             case NONE:
-                current = new TextComponent( current.getText() );
+                currentStyle = Style.EMPTY;
                 break;
             case ALL:
                 // No changes are required
                 break;
             case EVENTS:
-                current = new TextComponent( current.getText() );
-                current.setInsertion( previous.getInsertion() );
-                current.setClickEvent( previous.getClickEvent() );
-                current.setHoverEvent( previous.getHoverEvent() );
+                currentStyle = Style.EMPTY.withInsertion( currentStyle.getInsertion() )
+                        .withClickEvent( currentStyle.getClickEvent() )
+                        .withHoverEvent( currentStyle.getHoverEvent() );
                 break;
             case FORMATTING:
-                current.setClickEvent( null );
-                current.setHoverEvent( null );
+                currentStyle = currentStyle.withClickEvent( null ).withHoverEvent( null );
                 break;
         }
         return this;
@@ -271,11 +276,22 @@ public class MessageBuilder
      */
     public BaseComponent[] create()
     {
-        BaseComponent[] result = parts.toArray( new BaseComponent[ parts.size() + 1 ] );
-        result[parts.size()] = current;
+        BaseComponent[] result = new BaseComponent[ texts.size() + 1 ];
+        for ( int i = 0; i < texts.size(); i++ )
+        {
+            result[i] = component( texts.get( i ), styles.get( i ) );
+        }
+        result[texts.size()] = component( currentText, currentStyle );
         return result;
     }
 
+    private static TextComponent component(String text, Style style)
+    {
+        TextComponent component = new TextComponent( text );
+        component.setStyle( style );
+        return component;
+    }
+
     public static enum FormatRetention
     {
 
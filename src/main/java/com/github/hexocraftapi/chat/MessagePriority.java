@@ -0,0 +1,58 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Importance of a message waiting to be sent by {@link AsyncChat}. When the
+ * queue of a player is full, the messages of the lowest priority are dropped
+ * first.
+ */
+public enum MessagePriority
+{
+	/**
+	 * Messages that are soon out of date: spam, kill feed, action bar.
+	 */
+	LOW,
+	/**
+	 * Chat messages.
+	 */
+	NORMAL,
+	/**
+	 * Messages the player must get: system messages, private messages.
+	 */
+	HIGH;
+
+	/**
+	 * Returns the default priority of a position.
+	 *
+	 * @param position Where the message is displayed.
+	 * @return The priority of the messages displayed there.
+	 */
+	public static MessagePriority of(ChatMessageType position)
+	{
+		switch(position)
+		{
+			case SYSTEM:
+				return HIGH;
+			case ACTION_BAR:
+				return LOW;
+			default:
+				return NORMAL;
+		}
+	}
+}
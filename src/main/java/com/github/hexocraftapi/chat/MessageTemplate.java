@@ -0,0 +1,246 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.Serializer.ComponentSerializer;
+import com.github.hexocraftapi.chat.Serializer.ComponentWriter;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.google.common.base.Preconditions;
+import org.bukkit.entity.Player;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message with named placeholders, serialized once.
+ * <p>
+ * A placeholder is a name between braces, such as {@code {player}}, made of
+ * letters, digits, {@code _}, {@code -} or {@code .}. It may appear in any
+ * text of the message: texts, insertions, click event values and hover
+ * texts. The message is serialized when the template is created and the json
+ * split around the placeholders, so rendering it only escapes the values and
+ * joins them with the fixed parts: the cost depends on the size of the
+ * values, not on the size of the message.
+ * </p>
+ * <pre>
+ * MessageTemplate template = new MessageTemplate(new MessageBuilder("You received ")
+ *         .append("{amount}").color(ChatColor.GOLD).append(" coins").reset().create());
+ * template.send(player, 25);
+ * </pre>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public class MessageTemplate
+{
+	private final ComponentWriter.Escaping escaping;
+	/**
+	 * Json around the placeholders, one more than the placeholders
+	 */
+	private final String[] fragments;
+	/**
+	 * Index in {@link #names} of each placeholder
+	 */
+	private final int[] placeholders;
+	private final String[] names;
+	private final int fixedLength;
+
+	/**
+	 * Creates a MessageTemplate.
+	 *
+	 * @param components The message, with placeholders in its texts.
+	 */
+	public MessageTemplate(BaseComponent... components)
+	{
+		this(ComponentWriter.Escaping.HTML_SAFE, components);
+	}
+
+	/**
+	 * Creates a MessageTemplate.
+	 *
+	 * @param escaping How the json strings are escaped.
+	 * @param components The message, with placeholders in its texts.
+	 */
+	public MessageTemplate(ComponentWriter.Escaping escaping, BaseComponent... components)
+	{
+		this.escaping = escaping;
+
+		StringBuilder builder = new StringBuilder();
+		ComponentSerializer.write(builder, escaping, components);
+		String json = builder.toString();
+
+		// Braces of the json itself are always followed by a quote or a brace,
+		// so a name between braces can only be in a string
+		List<String> fragments = new ArrayList<String>();
+		List<Integer> placeholders = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		int last = 0;
+		for(int i = json.indexOf('{'); i != -1; i = json.indexOf('{', i + 1))
+		{
+			int end = i + 1;
+			while(end < json.length() && isNameChar(json.charAt(end)))
+				end++;
+			if(end == i + 1 || end == json.length() || json.charAt(end) != '}')
+				continue;
+
+			String name = json.substring(i + 1, end);
+			int index = names.indexOf(name);
+			if(index == -1)
+			{
+				index = names.size();
+				names.add(name);
+			}
+			fragments.add(json.substring(last, i));
+			placeholders.add(index);
+			last = end + 1;
+			i = end;
+		}
+		fragments.add(json.substring(last));
+
+		this.fragments = fragments.toArray(new String[fragments.size()]);
+		this.placeholders = new int[placeholders.size()];
+		for(int i = 0; i < this.placeholders.length; i++)
+			this.placeholders[i] = placeholders.get(i);
+		this.names = names.toArray(new String[names.size()]);
+
+		int fixedLength = 0;
+		for(String fragment : this.fragments)
+			fixedLength += fragment.length();
+		this.fixedLength = fixedLength;
+	}
+
+	/**
+	 * Creates a MessageTemplate from a text using the old formatting system.
+	 *
+	 * @param legacyMessage The message, with placeholders in its text.
+	 * @return The template.
+	 */
+	public static MessageTemplate fromLegacyText(String legacyMessage)
+	{
+		return new MessageTemplate(TextComponent.fromLegacyText(legacyMessage));
+	}
+
+	private static boolean isNameChar(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-' || c == '.';
+	}
+
+	/**
+	 * @return the names of the placeholders, in the order they first appear
+	 */
+	public List<String> getPlaceholders() {
+		return Collections.unmodifiableList(Arrays.asList(this.names));
+	}
+
+	/**
+	 * Renders the json of the message.
+	 *
+	 * @param values The values of the placeholders, in the order of
+	 *               {@link #getPlaceholders()}.
+	 * @return The json message.
+	 */
+	public String toJson(Object... values)
+	{
+		Preconditions.checkArgument(values.length == names.length, "Expected %s values but got %s", names.length, values.length);
+		String[] strings = new String[values.length];
+		for(int i = 0; i < values.length; i++)
+			strings[i] = String.valueOf(values[i]);
+		return render(strings);
+	}
+
+	/**
+	 * Renders the json of the message.
+	 *
+	 * @param values The values of the placeholders, by name.
+	 * @return The json message.
+	 */
+	public String toJson(Map<String, ?> values)
+	{
+		String[] strings = new String[names.length];
+		for(int i = 0; i < names.length; i++)
+		{
+			Preconditions.checkArgument(values.containsKey(names[i]), "Missing value for {%s}", names[i]);
+			strings[i] = String.valueOf(values.get(names[i]));
+		}
+		return render(strings);
+	}
+
+	private String render(String[] values)
+	{
+		int length = fixedLength;
+		for(int placeholder : placeholders)
+			length += values[placeholder].length();
+
+		StringBuilder builder = new StringBuilder(length + 16);
+		ComponentWriter writer = new ComponentWriter(builder, escaping);
+		try
+		{
+			builder.append(fragments[0]);
+			for(int i = 0; i < placeholders.length; i++)
+			{
+				writer.escape(values[placeholders[i]]);
+				builder.append(fragments[i + 1]);
+			}
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Renders the message as a {@link PreparedMessage}, to send it to several
+	 * players.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param values The values of the placeholders, in the order of
+	 *               {@link #getPlaceholders()}.
+	 * @return The prepared message.
+	 */
+	public PreparedMessage prepare(ChatMessageType position, Object... values)
+	{
+		return new PreparedMessage(position, toJson(values));
+	}
+
+	/**
+	 * Renders the message and sends it to a player.
+	 *
+	 * @param player The player receiving the message.
+	 * @param values The values of the placeholders, in the order of
+	 *               {@link #getPlaceholders()}.
+	 */
+	public void send(Player player, Object... values)
+	{
+		Chat.sendJsonMessage(player, toJson(values));
+	}
+
+	/**
+	 * Renders the message and sends it to a player.
+	 *
+	 * @param player The player receiving the message.
+	 * @param values The values of the placeholders, by name.
+	 */
+	public void send(Player player, Map<String, ?> values)
+	{
+		Chat.sendJsonMessage(player, toJson(values));
+	}
+}
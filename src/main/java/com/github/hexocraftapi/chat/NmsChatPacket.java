@@ -0,0 +1,280 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.nms.packet.NmsPacketPlayOutChat;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Builds and sends chat packets without going through
+ * {@link NmsPacketPlayOutChat}, so that a packet can be built once and sent
+ * many times.
+ * <p>
+ * The server classes are resolved once by reflection. If they can't be
+ * resolved, {@link #create(byte, String)} returns null and the messages are
+ * sent through {@link NmsPacketPlayOutChat}.
+ * </p>
+ * <p>
+ * Packets can also be written to the netty channel of a player without being
+ * flushed, so that a batch of packets costs a single flush. When the channel
+ * can't be found, {@link #channel(Player)} returns null and the packets are
+ * sent one by one.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+final class NmsChatPacket
+{
+	private static Method chatSerializer;
+	private static Method chatMessageType;
+	private static Constructor<?> packetConstructor;
+	private static Method getHandle;
+	private static Field playerConnection;
+	private static Method sendPacket;
+	private static final boolean supported = resolve();
+	private static Field networkManager;
+	private static Field channel;
+	private static Method write;
+	private static Method flush;
+	private static Method isWritable;
+	private static final boolean channelSupported = resolveChannel();
+
+	private NmsChatPacket() {}
+
+	private static boolean resolve()
+	{
+		try
+		{
+			String version = Bukkit.getServer().getClass().getPackage().getName();
+			version = version.substring(version.lastIndexOf('.') + 1);
+			String nms = "net.minecraft.server." + version + ".";
+
+			Class<?> chatComponent = Class.forName(nms + "IChatBaseComponent");
+			Class<?> packetChat = Class.forName(nms + "PacketPlayOutChat");
+			chatSerializer = Class.forName(nms + "IChatBaseComponent$ChatSerializer").getMethod("a", String.class);
+			try
+			{
+				// 1.12 and later
+				Class<?> messageType = Class.forName(nms + "ChatMessageType");
+				chatMessageType = messageType.getMethod("a", byte.class);
+				packetConstructor = packetChat.getConstructor(chatComponent, messageType);
+			}
+			catch(ClassNotFoundException e)
+			{
+				packetConstructor = packetChat.getConstructor(chatComponent, byte.class);
+			}
+
+			getHandle = Class.forName("org.bukkit.craftbukkit." + version + ".entity.CraftPlayer").getMethod("getHandle");
+			playerConnection = getHandle.getReturnType().getField("playerConnection");
+			sendPacket = playerConnection.getType().getMethod("sendPacket", Class.forName(nms + "Packet"));
+			return true;
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+	}
+
+	private static boolean resolveChannel()
+	{
+		if(!supported)
+			return false;
+		try
+		{
+			networkManager = playerConnection.getType().getField("networkManager");
+			for(Field field : networkManager.getType().getDeclaredFields())
+			{
+				// Netty is relocated on some servers
+				if(field.getType().getName().endsWith(".netty.channel.Channel"))
+				{
+					field.setAccessible(true);
+					channel = field;
+					break;
+				}
+			}
+			if(channel == null)
+				return false;
+			write = channel.getType().getMethod("write", Object.class);
+			flush = channel.getType().getMethod("flush");
+			isWritable = channel.getType().getMethod("isWritable");
+			return true;
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if packets can be built and sent directly
+	 */
+	static boolean isSupported()
+	{
+		return supported;
+	}
+
+	/**
+	 * Builds a chat packet.
+	 *
+	 * @param type The position of the message.
+	 * @param json The json message.
+	 * @return The packet, or null if it can't be built on this server.
+	 */
+	static Object create(byte type, String json)
+	{
+		if(!supported)
+			return null;
+
+		try
+		{
+			Object component = chatSerializer.invoke(null, json);
+			if(chatMessageType != null)
+				return packetConstructor.newInstance(component, chatMessageType.invoke(null, type));
+			return packetConstructor.newInstance(component, type);
+		}
+		catch(Exception e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Sends a packet built by {@link #create(byte, String)}.
+	 *
+	 * @param player The player receiving the packet.
+	 * @param packet The packet.
+	 * @return false if the packet could not be sent.
+	 */
+	static boolean send(Player player, Object packet)
+	{
+		if(packet == null || !getHandle.getDeclaringClass().isInstance(player))
+			return false;
+
+		try
+		{
+			Object connection = playerConnection.get(getHandle.invoke(player));
+			if(connection == null)
+				return false;
+			sendPacket.invoke(connection, packet);
+			return true;
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the netty channel of a player.
+	 *
+	 * @param player The player.
+	 * @return The channel, or null if it can't be found on this server.
+	 */
+	static Object channel(Player player)
+	{
+		if(!channelSupported || !getHandle.getDeclaringClass().isInstance(player))
+			return null;
+
+		try
+		{
+			Object connection = playerConnection.get(getHandle.invoke(player));
+			if(connection == null)
+				return null;
+			return channel.get(networkManager.get(connection));
+		}
+		catch(Exception e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a packet built by {@link #create(byte, String)} to a channel,
+	 * without flushing it.
+	 * <p>
+	 * The packet goes straight to the channel, not through the queue of the
+	 * NetworkManager: it may overtake packets the server queued earlier while
+	 * the channel was not open yet, and packets the server sends from the
+	 * main thread meanwhile may be written before it. Only the order of the
+	 * packets written here is kept.
+	 * </p>
+	 *
+	 * @param channel The channel returned by {@link #channel(Player)}.
+	 * @param packet The packet.
+	 * @return false if the packet could not be written.
+	 */
+	static boolean write(Object channel, Object packet)
+	{
+		if(channel == null || packet == null)
+			return false;
+
+		try
+		{
+			write.invoke(channel, packet);
+			return true;
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Flushes the packets written to a channel.
+	 *
+	 * @param channel The channel returned by {@link #channel(Player)}.
+	 */
+	static void flush(Object channel)
+	{
+		try
+		{
+			flush.invoke(channel);
+		}
+		catch(Exception e)
+		{
+			// The channel has been closed
+		}
+	}
+
+	/**
+	 * Returns whether a channel accepts more packets without them piling up
+	 * in its outbound buffer.
+	 *
+	 * @param channel The channel returned by {@link #channel(Player)}.
+	 * @return false if the connection can't keep up, true if it can or if the
+	 *         channel is unknown.
+	 */
+	static boolean isWritable(Object channel)
+	{
+		if(channel == null)
+			return true;
+
+		try
+		{
+			return (Boolean)isWritable.invoke(channel);
+		}
+		catch(Exception e)
+		{
+			return true;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * What is done with a message whose json is longer than
+ * {@link Chat#MAX_JSON_LENGTH}, which would get the player kicked. Every
+ * message sent, prepared or broadcast goes through this check, see
+ * {@link PreparedMessage}.
+ */
+public enum OversizePolicy
+{
+    /**
+     * Sends only the first part of the message that fits.
+     */
+    TRUNCATE,
+    /**
+     * Sends the message in as many packets as needed.
+     */
+    SPLIT,
+    /**
+     * Sends nothing and throws an {@link IllegalArgumentException}.
+     */
+    REJECT
+}
@@ -0,0 +1,430 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Splits a list of entries into chat pages.
+ * <p>
+ * Only the entries of the requested page are rendered, wrapped and
+ * serialized: the entries before it are skipped (by index for a list), the
+ * ones after it are never read. Each page ends with a navigation line whose
+ * previous and next links run the page command, its labels being set by
+ * {@link #labels(String, String, String, String)}. A page holds a number of
+ * entries, not of lines: an entry wrapped onto several lines makes the page
+ * taller. The pages viewed recently
+ * are kept per viewer, the least recently viewed being dropped once the cache
+ * is full.
+ * </p>
+ * <pre>
+ * Paginator&lt;Warp&gt; paginator = new Paginator&lt;Warp&gt;(warps, renderer, "/warps %d");
+ * paginator.send(player, 2);
+ * </pre>
+ *
+ * @param <T> The type of the entries.
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public class Paginator<T>
+{
+	/**
+	 * Renders an entry of a {@link Paginator}.
+	 *
+	 * @param <T> The type of the entries.
+	 */
+	public interface Renderer<T>
+	{
+		/**
+		 * Renders an entry. The components are wrapped to the width of the
+		 * page and may take several lines.
+		 *
+		 * @param entry The entry.
+		 * @param index The index of the entry, starting at 0.
+		 * @return The components of the entry.
+		 */
+		BaseComponent[] render(T entry, int index);
+	}
+
+	private final Iterable<? extends T> entries;
+	private final Renderer<? super T> renderer;
+	private final String command;
+
+	private int entriesPerPage = Chat.CHAT_PAGE_HEIGHT - 1;
+	private int pixelWidth = Chat.CHAT_PAGE_PIXEL_WIDTH;
+	private String previousLabel = "\u00ab Previous";
+	private String nextLabel = "Next \u00bb";
+	private String pageFormat = "Page %d";
+	private String pageOfFormat = "Page %d/%d";
+	private final PageCache cache = new PageCache(64);
+
+	/**
+	 * Creates a Paginator.
+	 * <p>
+	 * The entries are read again each time a page is rendered, so an
+	 * {@link Iterable} backed by a database or a file will show its latest
+	 * content once the cache is invalidated.
+	 * </p>
+	 *
+	 * @param entries The entries.
+	 * @param renderer The renderer of an entry.
+	 * @param command The command showing a page, with {@code %d} in place of
+	 *                the page number, or null for no navigation links.
+	 */
+	public Paginator(Iterable<? extends T> entries, Renderer<? super T> renderer, String command)
+	{
+		this.entries = Preconditions.checkNotNull(entries, "entries");
+		this.renderer = Preconditions.checkNotNull(renderer, "renderer");
+		this.command = command;
+	}
+
+	public int getEntriesPerPage() {
+		return this.entriesPerPage;
+	}
+
+	/**
+	 * Sets the number of entries of a page. Defaults to one less than
+	 * {@link Chat#CHAT_PAGE_HEIGHT} to leave room for the navigation line.
+	 * Entries are counted, not the lines they are wrapped onto: lower it if
+	 * the entries may take more than one line each.
+	 *
+	 * @param entriesPerPage The number of entries of a page.
+	 * @return This Paginator.
+	 */
+	public Paginator<T> entriesPerPage(int entriesPerPage)
+	{
+		Preconditions.checkArgument(entriesPerPage > 0, "entriesPerPage must be positive");
+		this.entriesPerPage = entriesPerPage;
+		invalidate();
+		return this;
+	}
+
+	public int getPixelWidth() {
+		return this.pixelWidth;
+	}
+
+	/**
+	 * Sets the width the entries are wrapped to. Defaults to
+	 * {@link Chat#CHAT_PAGE_PIXEL_WIDTH}.
+	 *
+	 * @param pixelWidth The width of a line in pixels.
+	 * @return This Paginator.
+	 */
+	public Paginator<T> pixelWidth(int pixelWidth)
+	{
+		Preconditions.checkArgument(pixelWidth > 0, "pixelWidth must be positive");
+		this.pixelWidth = pixelWidth;
+		invalidate();
+		return this;
+	}
+
+	/**
+	 * Sets the labels of the navigation line. Default to English.
+	 *
+	 * @param previous The label of the link to the previous page.
+	 * @param next The label of the link to the next page.
+	 * @param page The format of a page number, with {@code %d} in place of
+	 *             the number, such as {@code "Page %d"}. Used when the number
+	 *             of pages isn't known and in the tooltip of the links.
+	 * @param pageOf The format of a page number out of the number of pages,
+	 *               such as {@code "Page %d/%d"}.
+	 * @return This Paginator.
+	 */
+	public Paginator<T> labels(String previous, String next, String page, String pageOf)
+	{
+		this.previousLabel = Preconditions.checkNotNull(previous, "previous");
+		this.nextLabel = Preconditions.checkNotNull(next, "next");
+		this.pageFormat = Preconditions.checkNotNull(page, "page");
+		this.pageOfFormat = Preconditions.checkNotNull(pageOf, "pageOf");
+		invalidate();
+		return this;
+	}
+
+	/**
+	 * Sets the number of rendered pages kept for all the viewers. Defaults
+	 * to 64.
+	 *
+	 * @param cacheSize The number of pages kept, 0 to keep none.
+	 * @return This Paginator.
+	 */
+	public Paginator<T> cacheSize(int cacheSize)
+	{
+		Preconditions.checkArgument(cacheSize >= 0, "cacheSize can't be negative");
+		cache.setMaxSize(cacheSize);
+		return this;
+	}
+
+	/**
+	 * Renders a page, without using the cache.
+	 *
+	 * @param number The page number, starting at 1.
+	 * @return The page.
+	 */
+	public Page getPage(int number)
+	{
+		Preconditions.checkArgument(number > 0, "Page numbers start at 1");
+
+		int first = (number - 1) * entriesPerPage;
+		Iterator<? extends T> iterator = Iterables.skip(entries, first).iterator();
+
+		List<BaseComponent[]> lines = new ArrayList<BaseComponent[]>();
+		for(int i = 0; i < entriesPerPage && iterator.hasNext(); i++)
+		{
+			BaseComponent[] components = renderer.render(iterator.next(), first + i);
+			if(components != null)
+				Chat.wordWrap(components, pixelWidth, lines);
+		}
+
+		int pageCount = -1;
+		if(entries instanceof Collection)
+			pageCount = Math.max(1, (((Collection<?>)entries).size() + entriesPerPage - 1) / entriesPerPage);
+		boolean hasNext = iterator.hasNext();
+
+		if(command != null && (number > 1 || hasNext))
+			lines.add(navigation(number, pageCount, hasNext));
+
+		List<PreparedMessage> messages = new ArrayList<PreparedMessage>(lines.size());
+		for(BaseComponent[] line : lines)
+			messages.add(new PreparedMessage(ChatMessageType.CHAT, line));
+		return new Page(number, pageCount, hasNext, messages);
+	}
+
+	/**
+	 * Returns a page seen by a viewer, rendering it only if it isn't cached.
+	 *
+	 * @param viewer The player viewing the page.
+	 * @param number The page number, starting at 1.
+	 * @return The page.
+	 */
+	public Page getPage(Player viewer, int number)
+	{
+		Preconditions.checkArgument(number > 0, "Page numbers start at 1");
+
+		PageKey key = new PageKey(viewer.getUniqueId(), number);
+		Page page = cache.get(key);
+		if(page == null)
+		{
+			page = getPage(number);
+			cache.put(key, page);
+		}
+		return page;
+	}
+
+	/**
+	 * Sends a page to a viewer.
+	 *
+	 * @param viewer The player viewing the page.
+	 * @param number The page number, starting at 1.
+	 */
+	public void send(Player viewer, int number)
+	{
+		getPage(viewer, number).send(viewer);
+	}
+
+	/**
+	 * Drops every cached page. To be called when the entries change.
+	 */
+	public void invalidate()
+	{
+		cache.clear();
+	}
+
+	/**
+	 * Drops the pages cached for a viewer.
+	 *
+	 * @param viewer The player viewing the pages.
+	 */
+	public void invalidate(Player viewer)
+	{
+		cache.remove(viewer.getUniqueId());
+	}
+
+	private BaseComponent[] navigation(int number, int pageCount, boolean hasNext)
+	{
+		List<BaseComponent> components = new ArrayList<BaseComponent>(3);
+		if(number > 1)
+			components.add(link(previousLabel, number - 1));
+
+		TextComponent current = new TextComponent(" " + (pageCount > 0 ? String.format(pageOfFormat, number, pageCount) : String.format(pageFormat, number)) + " ");
+		current.setColor(ChatColor.GRAY);
+		components.add(current);
+
+		if(hasNext)
+			components.add(link(nextLabel, number + 1));
+		return components.toArray(new BaseComponent[components.size()]);
+	}
+
+	private TextComponent link(String text, int number)
+	{
+		TextComponent link = new TextComponent(text);
+		link.setColor(ChatColor.GOLD);
+		link.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, String.format(command, number)));
+		link.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, new BaseComponent[]{ new TextComponent(String.format(pageFormat, number)) }));
+		return link;
+	}
+
+	/**
+	 * A rendered page, serialized and ready to be sent.
+	 */
+	public static final class Page
+	{
+		private final int number;
+		private final int pageCount;
+		private final boolean hasNext;
+		private final List<PreparedMessage> lines;
+
+		private Page(int number, int pageCount, boolean hasNext, List<PreparedMessage> lines)
+		{
+			this.number = number;
+			this.pageCount = pageCount;
+			this.hasNext = hasNext;
+			this.lines = Collections.unmodifiableList(lines);
+		}
+
+		public int getNumber() {
+			return this.number;
+		}
+
+		/**
+		 * @return the number of pages, or -1 if the entries aren't a collection
+		 */
+		public int getPageCount() {
+			return this.pageCount;
+		}
+
+		public boolean hasNext() {
+			return this.hasNext;
+		}
+
+		public List<PreparedMessage> getLines() {
+			return this.lines;
+		}
+
+		/**
+		 * Sends the page to a player.
+		 *
+		 * @param player The player receiving the page.
+		 */
+		public void send(Player player)
+		{
+			for(PreparedMessage line : lines)
+				line.send(player);
+		}
+	}
+
+	private static final class PageKey
+	{
+		private final UUID viewer;
+		private final int number;
+
+		PageKey(UUID viewer, int number)
+		{
+			this.viewer = viewer;
+			this.number = number;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o)
+				return true;
+			if(!(o instanceof PageKey))
+				return false;
+			PageKey key = (PageKey)o;
+			return number == key.number && viewer.equals(key.viewer);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * viewer.hashCode() + number;
+		}
+	}
+
+	/**
+	 * Least recently viewed pages first
+	 */
+	private static final class PageCache
+	{
+		private int maxSize;
+		private final LinkedHashMap<PageKey, Page> pages = new LinkedHashMap<PageKey, Page>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PageKey, Page> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+
+		PageCache(int maxSize)
+		{
+			this.maxSize = maxSize;
+		}
+
+		synchronized void setMaxSize(int maxSize)
+		{
+			this.maxSize = maxSize;
+			Iterator<PageKey> keys = pages.keySet().iterator();
+			while(pages.size() > maxSize && keys.hasNext())
+			{
+				keys.next();
+				keys.remove();
+			}
+		}
+
+		synchronized Page get(PageKey key)
+		{
+			return pages.get(key);
+		}
+
+		synchronized void put(PageKey key, Page page)
+		{
+			pages.put(key, page);
+		}
+
+		synchronized void remove(UUID viewer)
+		{
+			Iterator<PageKey> keys = pages.keySet().iterator();
+			while(keys.hasNext())
+			{
+				if(keys.next().viewer.equals(viewer))
+					keys.remove();
+			}
+		}
+
+		synchronized void clear()
+		{
+			pages.clear();
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.Serializer.ComponentSerializer;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.metrics.ChatMetrics;
+import com.github.hexocraftapi.nms.packet.NmsPacketPlayOutChat;
+import com.google.common.base.Preconditions;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A message serialized once and ready to be sent any number of times.
+ * <p>
+ * The json and, when the server allows it, the chat packet are built when the
+ * message is created, and only they are reused: sending it again doesn't
+ * serialize the components nor build a packet, which suits messages that
+ * stay the same for a long time (scoreboards, announcements, menu
+ * headers...). Each send still looks up the connection of the player by
+ * reflection, and the server still encodes the packet for each recipient.
+ * </p>
+ * <p>
+ * Every message sent by this library goes through the length check of this
+ * class: a json longer than {@link Chat#MAX_JSON_LENGTH}, which would get the
+ * player kicked, is handled by an {@link OversizePolicy} when the message is
+ * prepared. A split message is sent as several packets.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public class PreparedMessage
+{
+	private final ChatMessageType position;
+	private final String[] jsons;
+	private final Object[] packets;
+
+	/**
+	 * Creates a PreparedMessage, a message too long being handled by
+	 * {@link Chat#OVERSIZE_POLICY}.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param messages The message.
+	 */
+	public PreparedMessage(ChatMessageType position, BaseComponent... messages)
+	{
+		this(position, Chat.OVERSIZE_POLICY, messages);
+	}
+
+	/**
+	 * Creates a PreparedMessage.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param policy What to do if the json is longer than {@link Chat#MAX_JSON_LENGTH}.
+	 * @param messages The message.
+	 * @throws IllegalArgumentException if the message is rejected or can't be split.
+	 */
+	public PreparedMessage(ChatMessageType position, OversizePolicy policy, BaseComponent... messages)
+	{
+		this(position, fit(ComponentSerializer.toString(messages), messages, policy));
+	}
+
+	/**
+	 * Creates a PreparedMessage from a json message, a message too long being
+	 * handled by {@link Chat#OVERSIZE_POLICY}.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param jsonMessage The json message.
+	 */
+	public PreparedMessage(ChatMessageType position, String jsonMessage)
+	{
+		this(position, jsonMessage, Chat.OVERSIZE_POLICY);
+	}
+
+	/**
+	 * Creates a PreparedMessage from a json message. A json too long is
+	 * parsed to be split.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param jsonMessage The json message.
+	 * @param policy What to do if the json is longer than {@link Chat#MAX_JSON_LENGTH}.
+	 * @throws IllegalArgumentException if the message is rejected or can't be split.
+	 */
+	public PreparedMessage(ChatMessageType position, String jsonMessage, OversizePolicy policy)
+	{
+		this(position, fit(jsonMessage, null, policy));
+	}
+
+	private PreparedMessage(ChatMessageType position, String[] jsons)
+	{
+		this.position = position;
+		this.jsons = jsons;
+		this.packets = new Object[jsons.length];
+		for(int i = 0; i < jsons.length; i++)
+			this.packets[i] = NmsChatPacket.create((byte)position.ordinal(), jsons[i]);
+	}
+
+	/**
+	 * Returns the json of a message, split into parts no longer than
+	 * {@link Chat#MAX_JSON_LENGTH} if needed.
+	 *
+	 * @param json The json of the message.
+	 * @param messages The components of the json, or null to parse it if needed.
+	 * @param policy What to do if the json is too long.
+	 * @return The json of each packet to send.
+	 * @throws IllegalArgumentException if the message is rejected or can't be split.
+	 */
+	static String[] fit(String json, BaseComponent[] messages, OversizePolicy policy)
+	{
+		if(json.length() <= Chat.MAX_JSON_LENGTH)
+			return new String[]{ json };
+
+		if(messages == null)
+		{
+			Preconditions.checkArgument(policy != OversizePolicy.REJECT, "The json of the message is longer than %s characters", Chat.MAX_JSON_LENGTH);
+			messages = ComponentSerializer.parse(json);
+		}
+		List<BaseComponent[]> parts = Chat.split(messages, policy);
+		String[] jsons = new String[parts.size()];
+		for(int i = 0; i < jsons.length; i++)
+			jsons[i] = ComponentSerializer.toString(parts.get(i));
+		return jsons;
+	}
+
+	public ChatMessageType getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * @return the json of the message, or of its first part if it has been split
+	 */
+	public String getJson() {
+		return this.jsons[0];
+	}
+
+	/**
+	 * @return the json of each packet sent, more than one if the message has been split
+	 */
+	public String[] getJsons() {
+		return this.jsons.clone();
+	}
+
+	/**
+	 * @return true if the chat packets have been built and are reused on each send
+	 */
+	public boolean isPacketPrepared() {
+		return this.packets[0] != null;
+	}
+
+	/**
+	 * @return the number of packets the message is sent in
+	 */
+	int size() {
+		return this.jsons.length;
+	}
+
+	/**
+	 * @return the json of a packet
+	 */
+	String getJson(int part) {
+		return this.jsons[part];
+	}
+
+	/**
+	 * @return a chat packet, or null if it couldn't be built
+	 */
+	Object getPacket(int part) {
+		return this.packets[part];
+	}
+
+	/**
+	 * Sends the message to a player.
+	 *
+	 * @param player The player receiving the message.
+	 */
+	public void send(Player player)
+	{
+		for(int i = 0; i < jsons.length; i++)
+			send(player, i);
+	}
+
+	/**
+	 * Sends a packet of the message to a player.
+	 */
+	void send(Player player, int part)
+	{
+		if(!NmsChatPacket.send(player, packets[part]))
+			NmsPacketPlayOutChat.send(player, (byte)position.ordinal(), jsons[part]);
+		ChatMetrics.sent(position, jsons[part].length());
+	}
+
+	/**
+	 * Sends the message to several players.
+	 *
+	 * @param players The players receiving the message.
+	 */
+	public void send(Collection<? extends Player> players)
+	{
+		for(Player player : players)
+			send(player);
+	}
+}
@@ -0,0 +1,368 @@
+package com.github.hexocraftapi.chat.Serializer;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.bukkit.ChatColor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming json reader for chat components.
+ * <p>
+ * The json is read in a single pass with a {@link JsonReader}, without
+ * building an intermediate Gson tree. The components are the same as the ones
+ * built by {@link TextComponentSerializer}.
+ * </p>
+ */
+public class ComponentReader
+{
+    private static final Map<String, ChatColor> COLORS = new HashMap<String, ChatColor>();
+    private static final Map<String, ClickEvent.Action> CLICK_ACTIONS = new HashMap<String, ClickEvent.Action>();
+    private static final Map<String, HoverEvent.Action> HOVER_ACTIONS = new HashMap<String, HoverEvent.Action>();
+
+    static
+    {
+        for ( ChatColor color : ChatColor.values() )
+        {
+            COLORS.put( color.name().toLowerCase(), color );
+        }
+        for ( ClickEvent.Action action : ClickEvent.Action.values() )
+        {
+            CLICK_ACTIONS.put( action.name().toLowerCase(), action );
+        }
+        for ( HoverEvent.Action action : HoverEvent.Action.values() )
+        {
+            HOVER_ACTIONS.put( action.name().toLowerCase(), action );
+        }
+    }
+
+    private final JsonReader in;
+
+    /**
+     * Creates a ComponentReader.
+     *
+     * @param in where the json is read from
+     */
+    public ComponentReader(JsonReader in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Parses a json message. Like {@link ComponentSerializer#parse(String)}, a
+     * json array gives one component per element and anything else a single
+     * component.
+     *
+     * @param json the json to parse
+     * @return the components
+     * @throws JsonParseException if the json is not a valid message
+     */
+    public static BaseComponent[] parse(String json) throws JsonParseException
+    {
+        JsonReader in = lenientReader( json );
+        try
+        {
+            JsonToken token;
+            try
+            {
+                token = in.peek();
+            } catch ( EOFException e )
+            {
+                // Gson reads an empty document as null
+                return new BaseComponent[] { null };
+            }
+
+            ComponentReader reader = new ComponentReader( in );
+            BaseComponent[] components;
+            if ( token == JsonToken.BEGIN_ARRAY )
+            {
+                List<BaseComponent> list = reader.readArray();
+                components = list.toArray( new BaseComponent[ list.size() ] );
+            } else
+            {
+                components = new BaseComponent[] { reader.read() };
+            }
+
+            if ( in.peek() != JsonToken.END_DOCUMENT )
+            {
+                throw new JsonIOException( "JSON document was not fully consumed." );
+            }
+            return components;
+        } catch ( IOException e )
+        {
+            throw new JsonSyntaxException( e );
+        } catch ( IllegalStateException e )
+        {
+            throw new JsonSyntaxException( e );
+        }
+    }
+
+    /**
+     * Reads a component. A json primitive gives a {@link TextComponent}
+     * with that text and a json null gives {@code null}.
+     *
+     * @return the component
+     * @throws IOException if the json could not be read
+     */
+    public BaseComponent read() throws IOException
+    {
+        switch ( in.peek() )
+        {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BEGIN_OBJECT:
+                return readObject();
+            default:
+                return new TextComponent( string() );
+        }
+    }
+
+    /**
+     * Reads an array of components.
+     *
+     * @return the components
+     * @throws IOException if the json could not be read
+     */
+    public List<BaseComponent> readArray() throws IOException
+    {
+        List<BaseComponent> components = new ArrayList<BaseComponent>();
+        in.beginArray();
+        while ( in.hasNext() )
+        {
+            components.add( read() );
+        }
+        in.endArray();
+        return components;
+    }
+
+    private TextComponent readObject() throws IOException
+    {
+        TextComponent component = new TextComponent();
+        String text = null;
+
+        in.beginObject();
+        while ( in.hasNext() )
+        {
+            String name = in.nextName();
+            switch ( name )
+            {
+                case "text":
+                    text = string();
+                    break;
+                case "color":
+                    component.setColor( color( string() ) );
+                    break;
+                case "bold":
+                    component.setBold( bool() );
+                    break;
+                case "italic":
+                    component.setItalic( bool() );
+                    break;
+                case "underlined":
+                    component.setUnderlined( bool() );
+                    break;
+                case "strikethrough":
+                    component.setStrikethrough( bool() );
+                    break;
+                case "obfuscated":
+                    component.setObfuscated( bool() );
+                    break;
+                case "insertion":
+                    component.setInsertion( string() );
+                    break;
+                case "extra":
+                    component.setExtra( readArray() );
+                    break;
+                case "clickEvent":
+                    component.setClickEvent( readClickEvent() );
+                    break;
+                case "hoverEvent":
+                    component.setHoverEvent( readHoverEvent() );
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if ( text == null )
+        {
+            throw new JsonParseException( "Missing text at " + in.getPath() );
+        }
+        component.setText( text );
+        return component;
+    }
+
+    private ClickEvent readClickEvent() throws IOException
+    {
+        ClickEvent.Action action = null;
+        String value = null;
+
+        in.beginObject();
+        while ( in.hasNext() )
+        {
+            String name = in.nextName();
+            if ( name.equals( "action" ) )
+            {
+                String actionName = string();
+                action = CLICK_ACTIONS.get( actionName );
+                if ( action == null )
+                {
+                    action = valueOf( ClickEvent.Action.class, actionName, "clickEvent action" );
+                }
+            } else if ( name.equals( "value" ) )
+            {
+                value = string();
+            } else
+            {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if ( action == null || value == null )
+        {
+            throw new JsonParseException( "Incomplete clickEvent at " + in.getPath() );
+        }
+        return new ClickEvent( action, value );
+    }
+
+    private HoverEvent readHoverEvent() throws IOException
+    {
+        HoverEvent.Action action = null;
+        BaseComponent[] value = null;
+
+        in.beginObject();
+        while ( in.hasNext() )
+        {
+            String name = in.nextName();
+            if ( name.equals( "action" ) )
+            {
+                String actionName = string();
+                action = HOVER_ACTIONS.get( actionName );
+                if ( action == null )
+                {
+                    action = valueOf( HoverEvent.Action.class, actionName, "hoverEvent action" );
+                }
+            } else if ( name.equals( "value" ) )
+            {
+                if ( in.peek() == JsonToken.BEGIN_ARRAY )
+                {
+                    List<BaseComponent> list = readArray();
+                    value = list.toArray( new BaseComponent[ list.size() ] );
+                } else
+                {
+                    value = new BaseComponent[] { read() };
+                }
+            } else
+            {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if ( action == null || value == null )
+        {
+            throw new JsonParseException( "Incomplete hoverEvent at " + in.getPath() );
+        }
+        return new HoverEvent( action, value );
+    }
+
+    /**
+     * Creates a reader as lenient as the one of {@link com.google.gson.Gson#fromJson(String, Class)}.
+     * setLenient is deprecated since Gson 2.11 in favor of setStrictness, but
+     * servers ship older Gson versions that only have setLenient.
+     */
+    @SuppressWarnings( "deprecation" )
+    private static JsonReader lenientReader(String json)
+    {
+        JsonReader in = new JsonReader( new StringReader( json ) );
+        in.setLenient( true );
+        return in;
+    }
+
+    /**
+     * Returns the color of a json color name
+     */
+    static ChatColor color(String name)
+    {
+        ChatColor color = COLORS.get( name );
+        return color != null ? color : valueOf( ChatColor.class, name, "color" );
+    }
+
+    /**
+     * Returns the constant of an enum named like a json name, in any case
+     *
+     * @throws JsonParseException if there is no such constant
+     */
+    private static <E extends Enum<E>> E valueOf(Class<E> type, String name, String field)
+    {
+        try
+        {
+            return Enum.valueOf( type, name.toUpperCase() );
+        } catch ( IllegalArgumentException e )
+        {
+            throw new JsonParseException( "Unknown " + field + ": " + name, e );
+        }
+    }
+
+    /**
+     * Reads a primitive as a string, like {@link com.google.gson.JsonElement#getAsString()}
+     */
+    private String string() throws IOException
+    {
+        switch ( in.peek() )
+        {
+            case STRING:
+            case NUMBER:
+                return in.nextString();
+            case BOOLEAN:
+                return in.nextBoolean() ? "true" : "false";
+            default:
+                throw new JsonSyntaxException( "Expected a string but was " + in.peek() + " at " + in.getPath() );
+        }
+    }
+
+    /**
+     * Reads a primitive as a boolean, like {@link com.google.gson.JsonElement#getAsBoolean()}
+     */
+    private boolean bool() throws IOException
+    {
+        if ( in.peek() == JsonToken.BOOLEAN )
+        {
+            return in.nextBoolean();
+        }
+        return Boolean.parseBoolean( string() );
+    }
+}
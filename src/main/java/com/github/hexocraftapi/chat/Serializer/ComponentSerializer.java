@@ -17,10 +17,15 @@ package com.github.hexocraftapi.chat.Serializer;
  */
 
 import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.Linkifier;
 import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.metrics.ChatMetrics;
 import com.google.gson.*;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 
 public class ComponentSerializer implements JsonDeserializer<BaseComponent>
@@ -35,24 +40,284 @@ public class ComponentSerializer implements JsonDeserializer<BaseComponent>
 
     public static BaseComponent[] parse(String json)
     {
-        if ( json.startsWith( "[" ) )
-        { //Array
-            return gson.fromJson( json, BaseComponent[].class );
-        }
-        return new BaseComponent[]
+        if ( !ChatMetrics.isEnabled() )
         {
-            gson.fromJson( json, BaseComponent.class )
-        };
+            return ComponentReader.parse( json );
+        }
+        long start = System.nanoTime();
+        BaseComponent[] components = ComponentReader.parse( json );
+        ChatMetrics.parsed( System.nanoTime() - start );
+        return components;
     }
 
     public static String toString(BaseComponent component)
     {
-        return gson.toJson( component );
+        boolean timed = ChatMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        StringBuilder builder = new StringBuilder();
+        write( builder, component );
+        if ( timed )
+        {
+            ChatMetrics.serialized( System.nanoTime() - start, builder.length() );
+        }
+        return builder.toString();
     }
 
     public static String toString(BaseComponent... components)
     {
-        return gson.toJson( new TextComponent( components ) );
+        boolean timed = ChatMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        StringBuilder builder = new StringBuilder();
+        write( builder, components );
+        if ( timed )
+        {
+            ChatMetrics.serialized( System.nanoTime() - start, builder.length() );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the json of a component to an {@link Appendable}.
+     *
+     * @param writer where the json is written to
+     * @param component the component to write
+     * @throws JsonIOException if there was a problem writing to the writer
+     */
+    public static void write(Appendable writer, BaseComponent component) throws JsonIOException
+    {
+        try
+        {
+            new ComponentWriter( writer ).write( component );
+        } catch ( IOException e )
+        {
+            throw new JsonIOException( e );
+        }
+    }
+
+    /**
+     * Writes the json of the components to an {@link Appendable}.
+     *
+     * @param writer where the json is written to
+     * @param components the components to write
+     * @throws JsonIOException if there was a problem writing to the writer
+     */
+    public static void write(Appendable writer, BaseComponent... components) throws JsonIOException
+    {
+        write( writer, ComponentWriter.Escaping.HTML_SAFE, components );
+    }
+
+    /**
+     * Writes the json of the components to an {@link Appendable}.
+     *
+     * @param writer where the json is written to
+     * @param escaping how strings are escaped
+     * @param components the components to write
+     * @throws JsonIOException if there was a problem writing to the writer
+     */
+    public static void write(Appendable writer, ComponentWriter.Escaping escaping, BaseComponent... components) throws JsonIOException
+    {
+        try
+        {
+            new ComponentWriter( writer, escaping ).write( components );
+        } catch ( IOException e )
+        {
+            throw new JsonIOException( e );
+        }
+    }
+
+    /**
+     * Returns the length of the json {@link #toString(BaseComponent...)}
+     * returns, without writing it. The length of frozen components is
+     * computed once.
+     *
+     * @param components the components to measure
+     * @return the number of characters of the json
+     * @see ComponentSizer
+     */
+    public static int length(BaseComponent... components)
+    {
+        return ComponentSizer.length( ComponentWriter.Escaping.HTML_SAFE, components );
+    }
+
+    /**
+     * Returns the number of UTF-8 bytes of the json of the components,
+     * without the length prefix.
+     *
+     * @param escaping how strings are escaped
+     * @param components the components to measure
+     * @return the UTF-8 length of the json
+     */
+    public static int utf8Length(ComponentWriter.Escaping escaping, BaseComponent... components)
+    {
+        Utf8Appendable counter = new Utf8Appendable();
+        write( counter, escaping, components );
+        counter.finish();
+        return counter.length();
+    }
+
+    /**
+     * Writes the json of the components as a protocol string: the varint
+     * UTF-8 length followed by the UTF-8 bytes. The json is written once:
+     * the length is written afterwards, as a varint padded to
+     * {@value Utf8Appendable#MAX_PREFIX_SIZE} bytes, which the protocol
+     * reads the same. The position of the buffer is left unchanged if the
+     * json doesn't fit.
+     *
+     * @param buffer the buffer to write to
+     * @param escaping how strings are escaped
+     * @param components the components to write
+     * @return the number of bytes written, length prefix included
+     * @throws BufferOverflowException if the buffer is too small
+     * @throws IllegalArgumentException if the json is longer than a protocol string can be
+     */
+    public static int toUtf8(ByteBuffer buffer, ComponentWriter.Escaping escaping, BaseComponent... components) throws BufferOverflowException
+    {
+        int start = Utf8Appendable.reservePrefix( buffer );
+        try
+        {
+            Utf8Appendable out = new Utf8Appendable( buffer );
+            write( out, escaping, components );
+            out.finish();
+            int written = Utf8Appendable.writePrefix( buffer, start, out.length() );
+            ChatMetrics.encoded( out.length() );
+            return written;
+        } catch ( RuntimeException e )
+        {
+            buffer.position( start );
+            throw e;
+        }
+    }
+
+    /**
+     * Converts a text using the old formatting system straight to json.
+     * The json is the same as
+     * {@code toString(TextComponent.fromLegacyText(message))}, web links
+     * included.
+     *
+     * @param message the text to convert
+     * @return the json
+     */
+    public static String legacyToJson(String message)
+    {
+        return legacyToJson( message, Linkifier.URLS );
+    }
+
+    /**
+     * Converts a text using the old formatting system straight to json.
+     * The json is the same as
+     * {@code toString(TextComponent.fromLegacyText(message, linkifier))}.
+     *
+     * @param message the text to convert
+     * @param linkifier the linkifier, or null to leave links as plain text
+     * @return the json
+     */
+    public static String legacyToJson(String message, Linkifier linkifier)
+    {
+        StringBuilder builder = new StringBuilder( message.length() + 32 );
+        writeLegacy( builder, ComponentWriter.Escaping.HTML_SAFE, message, linkifier );
+        return builder.toString();
+    }
+
+    /**
+     * Writes the json of a text using the old formatting system to an
+     * {@link Appendable}.
+     *
+     * @param writer where the json is written to
+     * @param escaping how strings are escaped
+     * @param message the text to convert
+     * @param linkifier the linkifier, or null to leave links as plain text
+     * @throws JsonIOException if there was a problem writing to the writer
+     */
+    public static void writeLegacy(Appendable writer, ComponentWriter.Escaping escaping, String message, Linkifier linkifier) throws JsonIOException
+    {
+        try
+        {
+            new ComponentWriter( writer, escaping ).writeLegacy( message, linkifier );
+        } catch ( IOException e )
+        {
+            throw new JsonIOException( e );
+        }
+    }
+
+    /**
+     * Writes the json of a text using the old formatting system as a
+     * protocol string, like {@link #toUtf8(ByteBuffer, ComponentWriter.Escaping, BaseComponent...)}.
+     * The position of the buffer is left unchanged if the json doesn't fit.
+     *
+     * @param buffer the buffer to write to
+     * @param escaping how strings are escaped
+     * @param message the text to convert
+     * @param linkifier the linkifier, or null to leave links as plain text
+     * @return the number of bytes written, length prefix included
+     * @throws BufferOverflowException if the buffer is too small
+     * @throws IllegalArgumentException if the json is longer than a protocol string can be
+     */
+    public static int legacyToUtf8(ByteBuffer buffer, ComponentWriter.Escaping escaping, String message, Linkifier linkifier) throws BufferOverflowException
+    {
+        int start = Utf8Appendable.reservePrefix( buffer );
+        try
+        {
+            Utf8Appendable out = new Utf8Appendable( buffer );
+            writeLegacy( out, escaping, message, linkifier );
+            out.finish();
+            int written = Utf8Appendable.writePrefix( buffer, start, out.length() );
+            ChatMetrics.encoded( out.length() );
+            return written;
+        } catch ( RuntimeException e )
+        {
+            buffer.position( start );
+            throw e;
+        }
+    }
+
+    /**
+     * Converts a json message to a string that uses the old formatting
+     * codes, without building its components. The text is the same as
+     * {@code BaseComponent.toLegacyText(parse(json))}.
+     *
+     * @param json the json message
+     * @return the string in the old format
+     * @throws JsonParseException if the json is not a valid message
+     */
+    public static String jsonToLegacyText(String json) throws JsonParseException
+    {
+        return transcode( json, JsonTextTranscoder.Format.LEGACY );
+    }
+
+    /**
+     * Converts a json message to a string without any formatting, without
+     * building its components. The text is the same as
+     * {@code BaseComponent.toPlainText(parse(json))}.
+     *
+     * @param json the json message
+     * @return the string as plain text
+     * @throws JsonParseException if the json is not a valid message
+     */
+    public static String jsonToPlainText(String json) throws JsonParseException
+    {
+        return transcode( json, JsonTextTranscoder.Format.PLAIN );
+    }
+
+    private static String transcode(String json, JsonTextTranscoder.Format format)
+    {
+        StringBuilder builder = new StringBuilder( json.length() );
+        try
+        {
+            new JsonTextTranscoder( builder, format ).transcode( json );
+        } catch ( IOException e )
+        {
+            throw new JsonIOException( e );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the Gson instance used as a fallback for components the
+     *         {@link ComponentWriter} does not know about
+     */
+    static Gson gson()
+    {
+        return gson;
     }
 
     @Override
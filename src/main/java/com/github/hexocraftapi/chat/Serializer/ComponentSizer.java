@@ -0,0 +1,318 @@
+package com.github.hexocraftapi.chat.Serializer;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.bukkit.ChatColor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the length of the json of components without writing it.
+ * <p>
+ * The length is the exact number of characters {@link ComponentWriter}
+ * writes, escapes included. The fields are measured the way the writer
+ * writes them, so nothing is allocated for text components. The length of a
+ * frozen component never changes: it is kept, for as long as the component
+ * is in use, and measuring it again costs a lookup.
+ * </p>
+ */
+public final class ComponentSizer
+{
+    private static final Cache<BaseComponent, Integer> HTML_SAFE_LENGTHS = CacheBuilder.newBuilder().weakKeys().build();
+    private static final Cache<BaseComponent, Integer> COMPACT_LENGTHS = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * Length of {@code {"extra":[]}} and {@code ,"text":""}} around the components
+     */
+    private static final int ARRAY_OVERHEAD = 22;
+
+    /**
+     * Returns the length of the json {@link ComponentSerializer#write(Appendable, ComponentWriter.Escaping, BaseComponent...)}
+     * writes for the components.
+     *
+     * @param escaping how strings are escaped
+     * @param components the components to measure
+     * @return the number of characters of the json
+     */
+    public static int length(ComponentWriter.Escaping escaping, BaseComponent... components)
+    {
+        if ( components.length == 0 )
+        {
+            // {"text":""}
+            return 11;
+        }
+        return ARRAY_OVERHEAD + new ComponentSizer( escaping ).array( Arrays.asList( components ) ) - 2;
+    }
+
+    /**
+     * Returns the length of the json {@link ComponentSerializer#write(Appendable, BaseComponent)}
+     * writes for the component, as an element of an array.
+     *
+     * @param escaping how strings are escaped
+     * @param component the component to measure
+     * @return the number of characters of the json
+     */
+    public static int length(ComponentWriter.Escaping escaping, BaseComponent component)
+    {
+        return new ComponentSizer( escaping ).component( component );
+    }
+
+    /**
+     * Returns the length of a json string value once escaped, without the
+     * surrounding quotes.
+     *
+     * @param escaping how strings are escaped
+     * @param value the characters to measure
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @return the number of characters once escaped
+     */
+    public static int length(ComponentWriter.Escaping escaping, CharSequence value, int start, int end)
+    {
+        return escape( ComponentWriter.replacements( escaping ), value, start, end );
+    }
+
+    private final String[] replacements;
+    private final Cache<BaseComponent, Integer> lengths;
+
+    /**
+     * Components currently being measured, used to detect component loops
+     */
+    private BaseComponent[] path = new BaseComponent[ 8 ];
+    private int depth;
+
+    private ComponentSizer(ComponentWriter.Escaping escaping)
+    {
+        this.replacements = ComponentWriter.replacements( escaping );
+        this.lengths = escaping == ComponentWriter.Escaping.COMPACT ? COMPACT_LENGTHS : HTML_SAFE_LENGTHS;
+    }
+
+    private int component(BaseComponent component)
+    {
+        if ( component == null )
+        {
+            // null
+            return 4;
+        }
+        if ( !component.isFrozen() )
+        {
+            return measure( component );
+        }
+
+        Integer length = lengths.getIfPresent( component );
+        if ( length == null )
+        {
+            length = measure( component );
+            lengths.put( component, length );
+        }
+        return length;
+    }
+
+    private int measure(BaseComponent component)
+    {
+        if ( !( component instanceof TextComponent ) )
+        {
+            Counter counter = new Counter();
+            ComponentSerializer.gson().toJson( component, component.getClass(), counter );
+            return counter.length;
+        }
+
+        // Braces, plus the commas added below for each field
+        int length = 2 - 1;
+        int fields = 0;
+        List<BaseComponent> extra = component.getExtra();
+        if ( component.hasFormatting() || component.getInsertion() != null || ( extra != null && !extra.isEmpty() ) )
+        {
+            push( component );
+            try
+            {
+                ChatColor color = component.getColorRaw();
+                if ( color != null && ComponentWriter.COLOR_NAMES[color.ordinal()] != null )
+                {
+                    length += name( "color" ) + string( ComponentWriter.COLOR_NAMES[color.ordinal()] );
+                    fields++;
+                }
+                length += bool( "bold", component.isBoldRaw() )
+                        + bool( "italic", component.isItalicRaw() )
+                        + bool( "underlined", component.isUnderlinedRaw() )
+                        + bool( "strikethrough", component.isStrikethroughRaw() )
+                        + bool( "obfuscated", component.isObfuscatedRaw() );
+                fields += count( component.isBoldRaw() ) + count( component.isItalicRaw() ) + count( component.isUnderlinedRaw() )
+                        + count( component.isStrikethroughRaw() ) + count( component.isObfuscatedRaw() );
+                if ( component.getInsertion() != null )
+                {
+                    length += name( "insertion" ) + string( component.getInsertion() );
+                    fields++;
+                }
+                if ( extra != null )
+                {
+                    length += name( "extra" ) + array( extra );
+                    fields++;
+                }
+
+                ClickEvent clickEvent = component.getClickEvent();
+                if ( clickEvent != null )
+                {
+                    // {"action":...}
+                    length += name( "clickEvent" ) + 11 + string( ComponentWriter.CLICK_ACTIONS[clickEvent.getAction().ordinal()] );
+                    if ( clickEvent.getValue() != null )
+                    {
+                        // ,"value":...
+                        length += 9 + string( clickEvent.getValue() );
+                    }
+                    fields++;
+                }
+                HoverEvent hoverEvent = component.getHoverEvent();
+                if ( hoverEvent != null )
+                {
+                    length += name( "hoverEvent" ) + 11 + string( ComponentWriter.HOVER_ACTIONS[hoverEvent.getAction().ordinal()] );
+                    if ( hoverEvent.getValueList() != null )
+                    {
+                        length += 9 + array( hoverEvent.getValueList() );
+                    }
+                    fields++;
+                }
+            } finally
+            {
+                path[--depth] = null;
+            }
+        }
+        String text = ( (TextComponent) component ).getText();
+        if ( text != null )
+        {
+            length += name( "text" ) + string( text );
+            fields++;
+        }
+        return fields == 0 ? 2 : length + fields;
+    }
+
+    private int array(List<BaseComponent> components)
+    {
+        // Brackets and commas
+        int length = 1 + components.size();
+        if ( components.isEmpty() )
+        {
+            length++;
+        }
+        for ( BaseComponent component : components )
+        {
+            length += component( component );
+        }
+        return length;
+    }
+
+    private void push(BaseComponent component)
+    {
+        for ( int i = 0; i < depth; i++ )
+        {
+            Preconditions.checkArgument( path[i] != component, "Component loop" );
+        }
+        if ( depth == path.length )
+        {
+            path = Arrays.copyOf( path, depth * 2 );
+        }
+        path[depth++] = component;
+    }
+
+    /**
+     * Length of {@code "name":true} or {@code "name":false}, 0 if the value is not set
+     */
+    private static int bool(String name, Boolean value)
+    {
+        if ( value == null )
+        {
+            return 0;
+        }
+        return name( name ) + ( value ? 4 : 5 );
+    }
+
+    private static int count(Boolean value)
+    {
+        return value != null ? 1 : 0;
+    }
+
+    /**
+     * Length of {@code "name":}
+     */
+    private static int name(String name)
+    {
+        return name.length() + 3;
+    }
+
+    private int string(String value)
+    {
+        return 2 + escape( replacements, value, 0, value.length() );
+    }
+
+    private static int escape(String[] replacements, CharSequence value, int start, int end)
+    {
+        int length = end - start;
+        for ( int i = start; i < end; i++ )
+        {
+            char c = value.charAt( i );
+            if ( c < 128 )
+            {
+                if ( replacements[c] != null )
+                {
+                    length += replacements[c].length() - 1;
+                }
+            } else if ( c == '\u2028' || c == '\u2029' )
+            {
+                length += 5;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Counts the characters Gson writes for the other components
+     */
+    private static final class Counter implements Appendable
+    {
+        int length;
+
+        @Override
+        public Appendable append(CharSequence csq)
+        {
+            length += String.valueOf( csq ).length();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end)
+        {
+            length += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c)
+        {
+            length++;
+            return this;
+        }
+    }
+}
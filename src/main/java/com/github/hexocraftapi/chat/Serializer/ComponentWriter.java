@@ -0,0 +1,462 @@
+package com.github.hexocraftapi.chat.Serializer;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.ChatColorName;
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.LegacyTextParser;
+import com.github.hexocraftapi.chat.component.Linkifier;
+import com.github.hexocraftapi.chat.component.Style;
+import com.github.hexocraftapi.chat.component.TextComponent;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import com.google.common.base.Preconditions;
+import org.bukkit.ChatColor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming json writer for chat components.
+ * <p>
+ * The component tree is walked once and written straight to an
+ * {@link Appendable}, without building an intermediate Gson tree. The output
+ * is identical to the one produced by {@link TextComponentSerializer}.
+ * Components that are not {@link TextComponent}s are handed over to Gson.
+ * </p>
+ */
+public class ComponentWriter
+{
+    /**
+     * How strings are escaped in the json
+     */
+    public static enum Escaping
+    {
+        /**
+         * Escape {@code <}, {@code >}, {@code &}, {@code =} and {@code '}
+         * the way the default Gson instance does.
+         */
+        HTML_SAFE,
+        /**
+         * Only escape what json requires. The client reads the result the
+         * same way, but URL heavy messages are noticeably smaller.
+         */
+        COMPACT
+    }
+
+    private static final String[] REPLACEMENT_CHARS;
+    private static final String[] HTML_SAFE_REPLACEMENT_CHARS;
+
+    static
+    {
+        // Same escaping table as com.google.gson.stream.JsonWriter
+        REPLACEMENT_CHARS = new String[ 128 ];
+        for ( int i = 0; i <= 0x1f; i++ )
+        {
+            REPLACEMENT_CHARS[i] = String.format( "\\u%04x", i );
+        }
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+        HTML_SAFE_REPLACEMENT_CHARS = REPLACEMENT_CHARS.clone();
+        HTML_SAFE_REPLACEMENT_CHARS['<'] = "\\u003c";
+        HTML_SAFE_REPLACEMENT_CHARS['>'] = "\\u003e";
+        HTML_SAFE_REPLACEMENT_CHARS['&'] = "\\u0026";
+        HTML_SAFE_REPLACEMENT_CHARS['='] = "\\u003d";
+        HTML_SAFE_REPLACEMENT_CHARS['\''] = "\\u0027";
+    }
+
+    static final String[] COLOR_NAMES = new String[ ChatColor.values().length ];
+    static final String[] CLICK_ACTIONS = new String[ ClickEvent.Action.values().length ];
+    static final String[] HOVER_ACTIONS = new String[ HoverEvent.Action.values().length ];
+
+    static
+    {
+        for ( ChatColor color : ChatColor.values() )
+        {
+            COLOR_NAMES[color.ordinal()] = ChatColorName.getName( color );
+        }
+        for ( ClickEvent.Action action : ClickEvent.Action.values() )
+        {
+            CLICK_ACTIONS[action.ordinal()] = action.toString().toLowerCase();
+        }
+        for ( HoverEvent.Action action : HoverEvent.Action.values() )
+        {
+            HOVER_ACTIONS[action.ordinal()] = action.toString().toLowerCase();
+        }
+    }
+
+    private final Appendable out;
+    private final String[] replacements;
+
+    /**
+     * Components currently being written, used to detect component loops
+     */
+    private BaseComponent[] path = new BaseComponent[ 8 ];
+    private int depth;
+
+    /**
+     * Creates a ComponentWriter.
+     *
+     * @param out where the json is written to
+     */
+    public ComponentWriter(Appendable out)
+    {
+        this( out, Escaping.HTML_SAFE );
+    }
+
+    /**
+     * Creates a ComponentWriter.
+     *
+     * @param out where the json is written to
+     * @param escaping how strings are escaped
+     */
+    public ComponentWriter(Appendable out, Escaping escaping)
+    {
+        this.out = out;
+        this.replacements = replacements( escaping );
+    }
+
+    /**
+     * Returns the escape of each ASCII character, or null for the ones
+     * written as is. {@code \u2028} and {@code \u2029} are escaped as well.
+     *
+     * @param escaping how strings are escaped
+     * @return the shared table, not to be modified
+     */
+    public static String[] replacements(Escaping escaping)
+    {
+        return escaping == Escaping.COMPACT ? REPLACEMENT_CHARS : HTML_SAFE_REPLACEMENT_CHARS;
+    }
+
+    /**
+     * Writes a single component.
+     *
+     * @param component the component to write
+     * @throws IOException if the underlying {@link Appendable} fails
+     */
+    public void write(BaseComponent component) throws IOException
+    {
+        writeComponent( component );
+    }
+
+    /**
+     * Writes the components as the extras of a blank text component, the way
+     * {@link ComponentSerializer#toString(BaseComponent...)} does. The given
+     * components are not re-parented.
+     *
+     * @param components the components to write
+     * @throws IOException if the underlying {@link Appendable} fails
+     */
+    public void write(BaseComponent... components) throws IOException
+    {
+        if ( components.length == 0 )
+        {
+            out.append( "{\"text\":\"\"}" );
+            return;
+        }
+        out.append( "{\"extra\":" );
+        writeArray( Arrays.asList( components ) );
+        out.append( ",\"text\":\"\"}" );
+    }
+
+    /**
+     * Writes a text using the old formatting system that used
+     * {@link ChatColor#COLOR_CHAR}, without building its components. The
+     * json is the one {@link #write(BaseComponent...)} would write for
+     * {@link TextComponent#fromLegacyText(String, Linkifier)}.
+     *
+     * @param message the text to write
+     * @param linkifier the linkifier, or null to leave links as plain text
+     * @throws IOException if the underlying {@link Appendable} fails
+     */
+    public void writeLegacy(String message, Linkifier linkifier) throws IOException
+    {
+        out.append( "{\"extra\":[" );
+        LegacyHandler handler = new LegacyHandler();
+        new LegacyTextParser( message, linkifier ).parse( handler );
+        // fromLegacyText never returns an empty array
+        if ( handler.empty )
+        {
+            out.append( "{\"text\":\"\"}" );
+        }
+        out.append( "],\"text\":\"\"}" );
+    }
+
+    /**
+     * Writes each text of a legacy message as a component
+     */
+    private final class LegacyHandler implements LegacyTextParser.Handler
+    {
+        private boolean empty = true;
+
+        @Override
+        public void text(Style style, CharSequence text, int start, int end) throws IOException
+        {
+            if ( !empty )
+            {
+                out.append( ',' );
+            }
+            empty = false;
+
+            out.append( '{' );
+            boolean first = writeStyle( style, true );
+            if ( style.getClickEvent() != null )
+            {
+                first = name( "clickEvent", first );
+                writeClickEvent( style.getClickEvent() );
+            }
+            name( "text", first );
+            string( text, start, end );
+            out.append( '}' );
+        }
+    }
+
+    private void writeComponent(BaseComponent component) throws IOException
+    {
+        if ( component == null )
+        {
+            out.append( "null" );
+            return;
+        }
+        if ( !( component instanceof TextComponent ) )
+        {
+            ComponentSerializer.gson().toJson( component, component.getClass(), out );
+            return;
+        }
+
+        List<BaseComponent> extra = component.getExtra();
+        boolean first = true;
+        out.append( '{' );
+        if ( component.hasFormatting() || component.getInsertion() != null || ( extra != null && !extra.isEmpty() ) )
+        {
+            push( component );
+            try
+            {
+                first = writeStyle( component, first );
+                if ( extra != null )
+                {
+                    first = name( "extra", first );
+                    writeArray( extra );
+                }
+
+                //Events
+                ClickEvent clickEvent = component.getClickEvent();
+                if ( clickEvent != null )
+                {
+                    first = name( "clickEvent", first );
+                    writeClickEvent( clickEvent );
+                }
+                HoverEvent hoverEvent = component.getHoverEvent();
+                if ( hoverEvent != null )
+                {
+                    first = name( "hoverEvent", first );
+                    out.append( "{\"action\":" );
+                    string( HOVER_ACTIONS[hoverEvent.getAction().ordinal()] );
+                    if ( hoverEvent.getValueList() != null )
+                    {
+                        out.append( ",\"value\":" );
+                        writeArray( hoverEvent.getValueList() );
+                    }
+                    out.append( '}' );
+                }
+            } finally
+            {
+                path[--depth] = null;
+            }
+        }
+        String text = ( (TextComponent) component ).getText();
+        if ( text != null )
+        {
+            name( "text", first );
+            string( text );
+        }
+        out.append( '}' );
+    }
+
+    private boolean writeStyle(BaseComponent component, boolean first) throws IOException
+    {
+        ChatColor color = component.getColorRaw();
+        if ( color != null && COLOR_NAMES[color.ordinal()] != null )
+        {
+            first = name( "color", first );
+            string( COLOR_NAMES[color.ordinal()] );
+        }
+        first = bool( "bold", component.isBoldRaw(), first );
+        first = bool( "italic", component.isItalicRaw(), first );
+        first = bool( "underlined", component.isUnderlinedRaw(), first );
+        first = bool( "strikethrough", component.isStrikethroughRaw(), first );
+        first = bool( "obfuscated", component.isObfuscatedRaw(), first );
+        if ( component.getInsertion() != null )
+        {
+            first = name( "insertion", first );
+            string( component.getInsertion() );
+        }
+        return first;
+    }
+
+    /**
+     * Writes the formatting of a style the way {@link #writeStyle(BaseComponent, boolean)}
+     * writes the one of a component. Events are not written.
+     */
+    private boolean writeStyle(Style style, boolean first) throws IOException
+    {
+        ChatColor color = style.getColor();
+        if ( color != null && COLOR_NAMES[color.ordinal()] != null )
+        {
+            first = name( "color", first );
+            string( COLOR_NAMES[color.ordinal()] );
+        }
+        first = bool( "bold", style.isBold(), first );
+        first = bool( "italic", style.isItalic(), first );
+        first = bool( "underlined", style.isUnderlined(), first );
+        first = bool( "strikethrough", style.isStrikethrough(), first );
+        first = bool( "obfuscated", style.isObfuscated(), first );
+        if ( style.getInsertion() != null )
+        {
+            first = name( "insertion", first );
+            string( style.getInsertion() );
+        }
+        return first;
+    }
+
+    private void writeClickEvent(ClickEvent clickEvent) throws IOException
+    {
+        out.append( "{\"action\":" );
+        string( CLICK_ACTIONS[clickEvent.getAction().ordinal()] );
+        if ( clickEvent.getValue() != null )
+        {
+            out.append( ",\"value\":" );
+            string( clickEvent.getValue() );
+        }
+        out.append( '}' );
+    }
+
+    private void writeArray(List<BaseComponent> components) throws IOException
+    {
+        out.append( '[' );
+        for ( int i = 0; i < components.size(); i++ )
+        {
+            if ( i > 0 )
+            {
+                out.append( ',' );
+            }
+            writeComponent( components.get( i ) );
+        }
+        out.append( ']' );
+    }
+
+    private void push(BaseComponent component)
+    {
+        for ( int i = 0; i < depth; i++ )
+        {
+            Preconditions.checkArgument( path[i] != component, "Component loop" );
+        }
+        if ( depth == path.length )
+        {
+            path = Arrays.copyOf( path, depth * 2 );
+        }
+        path[depth++] = component;
+    }
+
+    private boolean bool(String name, Boolean value, boolean first) throws IOException
+    {
+        if ( value == null )
+        {
+            return first;
+        }
+        name( name, first );
+        out.append( value ? "true" : "false" );
+        return false;
+    }
+
+    private boolean name(String name, boolean first) throws IOException
+    {
+        if ( !first )
+        {
+            out.append( ',' );
+        }
+        out.append( '"' ).append( name ).append( "\":" );
+        return false;
+    }
+
+    private void string(String value) throws IOException
+    {
+        string( value, 0, value.length() );
+    }
+
+    private void string(CharSequence value, int start, int end) throws IOException
+    {
+        out.append( '"' );
+        escape( value, start, end );
+        out.append( '"' );
+    }
+
+    /**
+     * Writes the characters of a json string value, escaped but without the
+     * surrounding quotes.
+     *
+     * @param value the characters to write
+     * @throws IOException if the underlying {@link Appendable} fails
+     */
+    public void escape(CharSequence value) throws IOException
+    {
+        escape( value, 0, value.length() );
+    }
+
+    private void escape(CharSequence value, int start, int end) throws IOException
+    {
+        int last = start;
+        for ( int i = start; i < end; i++ )
+        {
+            char c = value.charAt( i );
+            String replacement;
+            if ( c < 128 )
+            {
+                replacement = replacements[c];
+                if ( replacement == null )
+                {
+                    continue;
+                }
+            } else if ( c == '\u2028' )
+            {
+                replacement = "\\u2028";
+            } else if ( c == '\u2029' )
+            {
+                replacement = "\\u2029";
+            } else
+            {
+                continue;
+            }
+            if ( last < i )
+            {
+                out.append( value, last, i );
+            }
+            out.append( replacement );
+            last = i + 1;
+        }
+        if ( last < end )
+        {
+            out.append( value, last, end );
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package com.github.hexocraftapi.chat.Serializer;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.component.BaseComponent;
+import com.github.hexocraftapi.chat.component.LegacyTextWriter;
+import com.github.hexocraftapi.chat.component.Style;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import org.bukkit.ChatColor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the text of a json message as plain or legacy text, without
+ * building its components.
+ * <p>
+ * The output is the one of {@link BaseComponent#toPlainText(BaseComponent...)},
+ * {@link BaseComponent#toLegacyText(BaseComponent...)} or
+ * {@link BaseComponent#toCompactLegacyText(BaseComponent...)} called on
+ * {@link ComponentSerializer#parse(String)}. The json is scanned once: the
+ * text and the style of each component are kept in a small node, so its
+ * fields can come in any order, and the nodes are written once the whole
+ * message is read. Insertions and click events are skipped without being
+ * checked, and so are hover events unless their text is asked for.
+ * </p>
+ * <p>
+ * Unlike {@link ComponentSerializer#parse(String)}, only strict json is
+ * read, apart from unquoted names and values: the lenient syntax of
+ * {@link com.google.gson.stream.JsonReader} such as single quoted strings,
+ * comments or {@code ;} and {@code =>} separators is a syntax error.
+ * </p>
+ */
+public final class JsonTextTranscoder
+{
+    /**
+     * The text written
+     */
+    public static enum Format
+    {
+        /**
+         * Text without any formatting
+         */
+        PLAIN,
+        /**
+         * Text with the old formatting codes before each segment
+         */
+        LEGACY,
+        /**
+         * Text with only the old formatting codes needed
+         */
+        COMPACT_LEGACY
+    }
+
+    private final Appendable out;
+    private final Format format;
+    private final boolean hoverText;
+    private final StringBuilder name = new StringBuilder();
+
+    private String json;
+    private int pos;
+    private LegacyTextWriter writer;
+
+    /**
+     * Creates a JsonTextTranscoder.
+     *
+     * @param out where the text is written to
+     * @param format the text written
+     */
+    public JsonTextTranscoder(Appendable out, Format format)
+    {
+        this( out, format, false );
+    }
+
+    /**
+     * Creates a JsonTextTranscoder.
+     *
+     * @param out where the text is written to
+     * @param format the text written
+     * @param hoverText whether the text shown by hover events is written,
+     *                  between parentheses after the text it is shown on
+     */
+    public JsonTextTranscoder(Appendable out, Format format, boolean hoverText)
+    {
+        this.out = out;
+        this.format = format;
+        this.hoverText = hoverText;
+    }
+
+    /**
+     * Writes the text of a json message.
+     *
+     * @param json the json message
+     * @throws IOException if the underlying {@link Appendable} fails
+     * @throws JsonParseException if the json is not a valid message
+     */
+    public void transcode(String json) throws IOException, JsonParseException
+    {
+        this.json = json;
+        this.pos = 0;
+        this.writer = format == Format.PLAIN ? null : new LegacyTextWriter( out, format == Format.COMPACT_LEGACY );
+
+        // An empty document is a null component
+        if ( skipWhitespace() == -1 )
+        {
+            return;
+        }
+        List<Node> nodes = value();
+        if ( skipWhitespace() != -1 )
+        {
+            throw new JsonIOException( "JSON document was not fully consumed." );
+        }
+        write( nodes, null );
+    }
+
+    private void array(List<Node> nodes) throws IOException
+    {
+        expect( '[' );
+        if ( skipWhitespace() == ']' )
+        {
+            pos++;
+            return;
+        }
+        while ( true )
+        {
+            component( nodes );
+            if ( next( ']' ) )
+            {
+                return;
+            }
+        }
+    }
+
+    private void component(List<Node> nodes) throws IOException
+    {
+        switch ( skipWhitespace() )
+        {
+            case '{':
+                nodes.add( object() );
+                break;
+            case '[':
+            case '}':
+            case ']':
+            case -1:
+                throw syntaxError( "Expected a component" );
+            default:
+                if ( isNull() )
+                {
+                    pos += 4;
+                    break;
+                }
+                nodes.add( new Node( Style.EMPTY, string() ) );
+                break;
+        }
+    }
+
+    private Node object() throws IOException
+    {
+        ChatColor color = null;
+        Boolean bold = null;
+        Boolean italic = null;
+        Boolean underlined = null;
+        Boolean strikethrough = null;
+        Boolean obfuscated = null;
+        String text = null;
+        List<Node> extra = null;
+        List<Node> hover = null;
+
+        expect( '{' );
+        if ( skipWhitespace() == '}' )
+        {
+            pos++;
+        } else
+        {
+            do
+            {
+                name();
+                String field = name.toString();
+                switch ( field )
+                {
+                    case "text":
+                        text = string();
+                        break;
+                    case "color":
+                        color = ComponentReader.color( string() );
+                        break;
+                    case "bold":
+                        bold = bool();
+                        break;
+                    case "italic":
+                        italic = bool();
+                        break;
+                    case "underlined":
+                        underlined = bool();
+                        break;
+                    case "strikethrough":
+                        strikethrough = bool();
+                        break;
+                    case "obfuscated":
+                        obfuscated = bool();
+                        break;
+                    case "extra":
+                        if ( json.charAt( pos ) != '[' )
+                        {
+                            throw syntaxError( "Expected an array" );
+                        }
+                        extra = new ArrayList<>();
+                        array( extra );
+                        break;
+                    case "hoverEvent":
+                        if ( hoverText )
+                        {
+                            hover = hoverEvent();
+                        } else
+                        {
+                            skipValue();
+                        }
+                        break;
+                    default:
+                        skipValue();
+                        break;
+                }
+            } while ( !next( '}' ) );
+        }
+
+        if ( text == null )
+        {
+            throw new JsonParseException( "Missing text at " + pos );
+        }
+        Node node = new Node( Style.of( color, bold, italic, underlined, strikethrough, obfuscated ), text );
+        node.extra = extra;
+        node.hover = hover;
+        return node;
+    }
+
+    /**
+     * Reads the components shown by a hover event
+     *
+     * @return the components, or null if the event does not show text
+     */
+    private List<Node> hoverEvent() throws IOException
+    {
+        Boolean showText = null;
+        List<Node> value = null;
+        int valuePos = -1;
+
+        expect( '{' );
+        if ( skipWhitespace() == '}' )
+        {
+            pos++;
+        } else
+        {
+            do
+            {
+                name();
+                if ( "action".contentEquals( name ) )
+                {
+                    showText = "show_text".equalsIgnoreCase( string() );
+                } else if ( "value".contentEquals( name ) && showText == null )
+                {
+                    // The action is not known yet: the value is read again
+                    // once it is, which only happens when it comes last
+                    valuePos = pos;
+                    value = null;
+                    skipValue();
+                } else if ( "value".contentEquals( name ) && showText )
+                {
+                    valuePos = -1;
+                    value = value();
+                } else
+                {
+                    skipValue();
+                }
+            } while ( !next( '}' ) );
+        }
+
+        if ( showText == null || !showText )
+        {
+            return null;
+        }
+        if ( valuePos != -1 )
+        {
+            int end = pos;
+            pos = valuePos;
+            value = value();
+            pos = end;
+        }
+        return value;
+    }
+
+    private List<Node> value() throws IOException
+    {
+        List<Node> nodes = new ArrayList<>();
+        if ( json.charAt( pos ) == '[' )
+        {
+            array( nodes );
+        } else
+        {
+            component( nodes );
+        }
+        return nodes;
+    }
+
+    /**
+     * Writes the text of a component, then the text of its extras
+     */
+    private void write(Node node, Style parent) throws IOException
+    {
+        Style resolved = node.style.resolve( parent );
+        if ( writer != null )
+        {
+            writer.appendFormat( resolved, node.text.isEmpty() );
+        }
+        out.append( node.text );
+        if ( node.extra != null )
+        {
+            write( node.extra, resolved );
+        }
+        if ( node.hover != null )
+        {
+            out.append( " (" );
+            write( node.hover, null );
+            out.append( ')' );
+        }
+    }
+
+    private void write(List<Node> nodes, Style parent) throws IOException
+    {
+        for ( Node node : nodes )
+        {
+            write( node, parent );
+        }
+    }
+
+    private void name() throws IOException
+    {
+        name.setLength( 0 );
+        if ( skipWhitespace() == '"' )
+        {
+            string( name );
+        } else
+        {
+            int end = literalEnd();
+            if ( end == pos )
+            {
+                throw syntaxError( "Expected a name" );
+            }
+            name.append( json, pos, end );
+            pos = end;
+        }
+        if ( skipWhitespace() != ':' )
+        {
+            throw syntaxError( "Expected ':'" );
+        }
+        pos++;
+        if ( skipWhitespace() == -1 )
+        {
+            throw syntaxError( "Expected a value" );
+        }
+    }
+
+    /**
+     * Reads a primitive as a string, like {@link com.google.gson.JsonElement#getAsString()}
+     */
+    private String string() throws IOException
+    {
+        checkPrimitive();
+        if ( json.charAt( pos ) == '"' )
+        {
+            StringBuilder builder = new StringBuilder();
+            string( builder );
+            return builder.toString();
+        }
+        int end = literalEnd();
+        String value = json.substring( pos, end );
+        pos = end;
+        return value;
+    }
+
+    /**
+     * Reads a primitive as a boolean, like {@link com.google.gson.JsonElement#getAsBoolean()}
+     */
+    private boolean bool() throws IOException
+    {
+        return Boolean.parseBoolean( string() );
+    }
+
+    /**
+     * Unescapes a json string to an {@link Appendable}
+     */
+    private void string(Appendable to) throws IOException
+    {
+        int last = ++pos;
+        while ( true )
+        {
+            if ( pos >= json.length() )
+            {
+                throw syntaxError( "Unterminated string" );
+            }
+            char c = json.charAt( pos );
+            if ( c == '"' )
+            {
+                to.append( json, last, pos++ );
+                return;
+            }
+            if ( c != '\\' )
+            {
+                pos++;
+                continue;
+            }
+
+            to.append( json, last, pos );
+            if ( ++pos >= json.length() )
+            {
+                throw syntaxError( "Unterminated escape sequence" );
+            }
+            c = json.charAt( pos++ );
+            switch ( c )
+            {
+                case 'u':
+                    if ( pos + 4 > json.length() )
+                    {
+                        throw syntaxError( "Unterminated escape sequence" );
+                    }
+                    try
+                    {
+                        to.append( (char) Integer.parseInt( json.substring( pos, pos + 4 ), 16 ) );
+                    } catch ( NumberFormatException e )
+                    {
+                        throw syntaxError( "Malformed escape sequence" );
+                    }
+                    pos += 4;
+                    break;
+                case 't':
+                    to.append( '\t' );
+                    break;
+                case 'b':
+                    to.append( '\b' );
+                    break;
+                case 'n':
+                    to.append( '\n' );
+                    break;
+                case 'r':
+                    to.append( '\r' );
+                    break;
+                case 'f':
+                    to.append( '\f' );
+                    break;
+                default:
+                    to.append( c );
+                    break;
+            }
+            last = pos;
+        }
+    }
+
+    private void checkPrimitive()
+    {
+        char c = json.charAt( pos );
+        if ( c == '{' || c == '[' || isNull() )
+        {
+            throw syntaxError( "Expected a string" );
+        }
+    }
+
+    private void skipValue()
+    {
+        char c = json.charAt( pos );
+        if ( c == '"' )
+        {
+            skipString();
+        } else if ( c == '{' || c == '[' )
+        {
+            int depth = 0;
+            do
+            {
+                if ( pos >= json.length() )
+                {
+                    throw syntaxError( "Unterminated value" );
+                }
+                c = json.charAt( pos );
+                if ( c == '"' )
+                {
+                    skipString();
+                    continue;
+                }
+                if ( c == '{' || c == '[' )
+                {
+                    depth++;
+                } else if ( c == '}' || c == ']' )
+                {
+                    depth--;
+                }
+                pos++;
+            } while ( depth > 0 );
+        } else
+        {
+            int end = literalEnd();
+            if ( end == pos )
+            {
+                throw syntaxError( "Expected a value" );
+            }
+            pos = end;
+        }
+    }
+
+    private void skipString()
+    {
+        for ( pos++; pos < json.length(); pos++ )
+        {
+            char c = json.charAt( pos );
+            if ( c == '\\' )
+            {
+                pos++;
+            } else if ( c == '"' )
+            {
+                pos++;
+                return;
+            }
+        }
+        throw syntaxError( "Unterminated string" );
+    }
+
+    /**
+     * Returns the end of an unquoted value
+     */
+    private int literalEnd()
+    {
+        int end = pos;
+        while ( end < json.length() )
+        {
+            char c = json.charAt( end );
+            if ( c == ',' || c == ':' || c == '}' || c == ']' || c == '{' || c == '[' || c == '"'
+                    || c == ' ' || c == '\t' || c == '\n' || c == '\r' )
+            {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    private boolean isNull()
+    {
+        return json.regionMatches( true, pos, "null", 0, 4 ) && literalEnd() == pos + 4;
+    }
+
+    /**
+     * Skips the separator after a value
+     *
+     * @return true if the separator was the closing character
+     */
+    private boolean next(char close)
+    {
+        int c = skipWhitespace();
+        pos++;
+        if ( c == close )
+        {
+            return true;
+        }
+        if ( c != ',' )
+        {
+            throw syntaxError( "Expected ',' or '" + close + "'" );
+        }
+        return false;
+    }
+
+    private void expect(char c)
+    {
+        if ( skipWhitespace() != c )
+        {
+            throw syntaxError( "Expected '" + c + "'" );
+        }
+        pos++;
+    }
+
+    /**
+     * @return the next character, or -1 at the end of the json
+     */
+    private int skipWhitespace()
+    {
+        while ( pos < json.length() )
+        {
+            char c = json.charAt( pos );
+            if ( c != ' ' && c != '\t' && c != '\n' && c != '\r' )
+            {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private JsonSyntaxException syntaxError(String message)
+    {
+        return new JsonSyntaxException( message + " at character " + pos );
+    }
+
+    /**
+     * The text and the own style of a component
+     */
+    private static final class Node
+    {
+        private final Style style;
+        private final String text;
+        private List<Node> extra;
+        private List<Node> hover;
+
+        private Node(Style style, String text)
+        {
+            this.style = style;
+            this.text = text;
+        }
+    }
+}
@@ -41,7 +41,7 @@ public class TextComponentSerializer extends BaseComponentSerializer implements
     {
         List<BaseComponent> extra = src.getExtra();
         JsonObject object = new JsonObject();
-        if ( src.hasFormatting() || ( extra != null && !extra.isEmpty() ) )
+        if ( src.hasFormatting() || src.getInsertion() != null || ( extra != null && !extra.isEmpty() ) )
         {
             serialize( object, src, context );
         }
@@ -0,0 +1,238 @@
+package com.github.hexocraftapi.chat.Serializer;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Preconditions;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link Appendable} encoding the appended characters as UTF-8 straight into
+ * a {@link ByteBuffer}.
+ * <p>
+ * Without a buffer the bytes are only counted, which gives the encoded length
+ * of a message before writing it. Unpaired surrogates are encoded as
+ * {@code '?'}, like {@link String#getBytes(java.nio.charset.Charset)} does.
+ * </p>
+ */
+public class Utf8Appendable implements Appendable
+{
+    private final ByteBuffer buffer;
+
+    /**
+     * Number of bytes encoded so far
+     */
+    private int length;
+
+    /**
+     * High surrogate waiting for its low surrogate
+     */
+    private char highSurrogate;
+
+    /**
+     * Creates an Utf8Appendable that only counts the encoded bytes.
+     */
+    public Utf8Appendable()
+    {
+        this( null );
+    }
+
+    /**
+     * Creates an Utf8Appendable.
+     *
+     * @param buffer the buffer the bytes are written to, {@code null} to only
+     *               count them
+     */
+    public Utf8Appendable(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the number of bytes encoded so far.
+     *
+     * @return the encoded length
+     */
+    public int length()
+    {
+        return length;
+    }
+
+    /**
+     * Encodes a dangling high surrogate, if any. Must be called once all the
+     * characters have been appended.
+     */
+    public void finish()
+    {
+        if ( highSurrogate != 0 )
+        {
+            highSurrogate = 0;
+            put( '?' );
+        }
+    }
+
+    @Override
+    public Utf8Appendable append(CharSequence csq)
+    {
+        return append( csq, 0, csq.length() );
+    }
+
+    @Override
+    public Utf8Appendable append(CharSequence csq, int start, int end)
+    {
+        for ( int i = start; i < end; i++ )
+        {
+            append( csq.charAt( i ) );
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Appendable append(char c)
+    {
+        if ( c < 0x80 && highSurrogate == 0 )
+        {
+            put( c );
+            return this;
+        }
+        if ( highSurrogate != 0 )
+        {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if ( Character.isLowSurrogate( c ) )
+            {
+                int codePoint = Character.toCodePoint( high, c );
+                put( 0xf0 | ( codePoint >> 18 ) );
+                put( 0x80 | ( ( codePoint >> 12 ) & 0x3f ) );
+                put( 0x80 | ( ( codePoint >> 6 ) & 0x3f ) );
+                put( 0x80 | ( codePoint & 0x3f ) );
+                return this;
+            }
+            put( '?' );
+        }
+
+        if ( c < 0x80 )
+        {
+            put( c );
+        } else if ( c < 0x800 )
+        {
+            put( 0xc0 | ( c >> 6 ) );
+            put( 0x80 | ( c & 0x3f ) );
+        } else if ( Character.isHighSurrogate( c ) )
+        {
+            highSurrogate = c;
+        } else if ( Character.isLowSurrogate( c ) )
+        {
+            put( '?' );
+        } else
+        {
+            put( 0xe0 | ( c >> 12 ) );
+            put( 0x80 | ( ( c >> 6 ) & 0x3f ) );
+            put( 0x80 | ( c & 0x3f ) );
+        }
+        return this;
+    }
+
+    private void put(int b)
+    {
+        if ( buffer != null )
+        {
+            buffer.put( (byte) b );
+        }
+        length++;
+    }
+
+    /**
+     * Size of the length prefix written by {@link #writePrefix(ByteBuffer, int, int)}:
+     * the client reads strings of at most 32767 characters, at most 4 bytes
+     * each, which fits a 3 byte varint
+     */
+    public static final int MAX_PREFIX_SIZE = 3;
+
+    /**
+     * Skips the room of a length prefix, to be written by
+     * {@link #writePrefix(ByteBuffer, int, int)} once the string is.
+     *
+     * @param buffer the buffer to write to
+     * @return the position of the prefix
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    public static int reservePrefix(ByteBuffer buffer) throws BufferOverflowException
+    {
+        int start = buffer.position();
+        if ( buffer.remaining() < MAX_PREFIX_SIZE )
+        {
+            throw new BufferOverflowException();
+        }
+        buffer.position( start + MAX_PREFIX_SIZE );
+        return start;
+    }
+
+    /**
+     * Writes the length of a string at the position reserved by
+     * {@link #reservePrefix(ByteBuffer)}, as a varint padded to
+     * {@link #MAX_PREFIX_SIZE} bytes.
+     *
+     * @param buffer the buffer the string has been written to
+     * @param start the position of the prefix
+     * @param length the number of bytes of the string
+     * @return the number of bytes written, prefix included
+     * @throws IllegalArgumentException if the length doesn't fit the prefix
+     */
+    public static int writePrefix(ByteBuffer buffer, int start, int length)
+    {
+        Preconditions.checkArgument( length < 1 << ( 7 * MAX_PREFIX_SIZE ), "The string is too long to be sent: %s bytes", length );
+        buffer.put( start, (byte) ( ( length & 0x7f ) | 0x80 ) );
+        buffer.put( start + 1, (byte) ( ( ( length >>> 7 ) & 0x7f ) | 0x80 ) );
+        buffer.put( start + 2, (byte) ( length >>> 14 ) );
+        return MAX_PREFIX_SIZE + length;
+    }
+
+    /**
+     * Returns the number of bytes needed to write a value as a varint.
+     *
+     * @param value the value
+     * @return the size of the varint, between 1 and 5
+     */
+    public static int varIntSize(int value)
+    {
+        int size = 1;
+        while ( ( value & ~0x7f ) != 0 )
+        {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes a value as a varint, the way the protocol prefixes strings.
+     *
+     * @param buffer the buffer to write to
+     * @param value the value
+     */
+    public static void writeVarInt(ByteBuffer buffer, int value)
+    {
+        while ( ( value & ~0x7f ) != 0 )
+        {
+            buffer.put( (byte) ( ( value & 0x7f ) | 0x80 ) );
+            value >>>= 7;
+        }
+        buffer.put( (byte) value );
+    }
+}
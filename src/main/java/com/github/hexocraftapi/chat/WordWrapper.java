@@ -0,0 +1,219 @@
+package com.github.hexocraftapi.chat;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.bukkit.ChatColor;
+
+import java.util.Collection;
+
+/**
+ * Single pass word wrapper used by {@link Chat#wordWrap(String, int, Collection)}.
+ * <p>
+ * Words are read as ranges of the raw string and copied once into a line
+ * buffer reused for every line. The color and formats active at the end of a
+ * line are written at the start of the next one, unless that line starts
+ * with its own color.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+final class WordWrapper
+{
+	private static final char FIRST_FORMAT = ChatColor.MAGIC.getChar();
+	private static final char LAST_FORMAT = ChatColor.ITALIC.getChar();
+
+	private final String text;
+	private final int lineLength;
+	private final Collection<? super String> lines;
+	private final StringBuilder line = new StringBuilder();
+
+	/**
+	 * Whether a word has been added to the current line
+	 */
+	private boolean started;
+	/**
+	 * Number of visible characters in the current line
+	 */
+	private int visible;
+	/**
+	 * Active color code
+	 */
+	private char color = ChatColor.WHITE.getChar();
+	/**
+	 * Active format codes, one bit per code from {@link ChatColor#MAGIC} to {@link ChatColor#ITALIC}
+	 */
+	private int formats;
+
+	WordWrapper(String text, int lineLength, Collection<? super String> lines)
+	{
+		this.text = text;
+		this.lineLength = lineLength;
+		this.lines = lines;
+	}
+
+	void wrap()
+	{
+		int length = text.length();
+		int start = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if(c == ' ' || c == '\n')
+			{
+				word(start, i);
+				start = i + 1;
+
+				// Newline forces the line to flush
+				if(c == '\n')
+				{
+					if(started)
+						flush();
+					else
+						lines.add("");
+				}
+			}
+		}
+		word(start, length);
+
+		// Only add the last line if there is anything to add
+		if(started)
+			flush();
+	}
+
+	private void word(int start, int end)
+	{
+		int length = visibleLength(start, end);
+
+		if(!started)
+		{
+			// Spaces at the start of a line are dropped
+			if(start == end)
+				return;
+			if(length <= lineLength)
+			{
+				startLine(start);
+				append(start, end);
+				visible = length;
+				return;
+			}
+		}
+		else if(visible + 1 + length <= lineLength)
+		{
+			line.append(' ');
+			append(start, end);
+			visible += 1 + length;
+			return;
+		}
+		else
+		{
+			flush();
+			if(length <= lineLength)
+			{
+				word(start, end);
+				return;
+			}
+		}
+
+		// Extremely long word: split it over several lines
+		for(int i = start; i < end; )
+		{
+			if(!started)
+				startLine(i);
+			char c = text.charAt(i);
+			if(c == ChatColor.COLOR_CHAR && i + 1 < end)
+			{
+				code(text.charAt(i + 1));
+				line.append(c).append(text.charAt(i + 1));
+				i += 2;
+			}
+			else if(visible == lineLength)
+				flush();
+			else
+			{
+				line.append(c);
+				visible++;
+				i++;
+			}
+		}
+	}
+
+	private int visibleLength(int start, int end)
+	{
+		int length = end - start;
+		for(int i = start; i < end - 1; i++)
+		{
+			if(text.charAt(i) == ChatColor.COLOR_CHAR)
+			{
+				length -= 2;
+				i++;
+			}
+		}
+		return length;
+	}
+
+	private void append(int start, int end)
+	{
+		line.append(text, start, end);
+		for(int i = start; i < end - 1; i++)
+		{
+			if(text.charAt(i) == ChatColor.COLOR_CHAR)
+				code(text.charAt(++i));
+		}
+	}
+
+	private void startLine(int start)
+	{
+		started = true;
+		visible = 0;
+		line.setLength(0);
+
+		// A line starting with a color doesn't need the previous formatting
+		if(start + 1 < text.length() && text.charAt(start) == ChatColor.COLOR_CHAR)
+		{
+			ChatColor format = ChatColorName.getByChar(text.charAt(start + 1));
+			if(format != null && !format.isFormat())
+				return;
+		}
+
+		line.append(ChatColor.COLOR_CHAR).append(color);
+		for(int i = 0; i <= LAST_FORMAT - FIRST_FORMAT; i++)
+		{
+			if((formats & (1 << i)) != 0)
+				line.append(ChatColor.COLOR_CHAR).append((char)(FIRST_FORMAT + i));
+		}
+	}
+
+	private void code(char code)
+	{
+		ChatColor format = ChatColorName.getByChar(code);
+		if(format == null)
+			return;
+		if(format.isFormat())
+			formats |= 1 << (format.getChar() - FIRST_FORMAT);
+		else
+		{
+			color = format.getChar();
+			formats = 0;
+		}
+	}
+
+	private void flush()
+	{
+		lines.add(line.toString());
+		started = false;
+	}
+}
@@ -18,9 +18,12 @@ package com.github.hexocraftapi.chat.component;
 
 import com.github.hexocraftapi.chat.event.ClickEvent;
 import com.github.hexocraftapi.chat.event.HoverEvent;
+import com.google.common.base.Preconditions;
 import org.bukkit.ChatColor;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public abstract class BaseComponent
@@ -28,53 +31,20 @@ public abstract class BaseComponent
     BaseComponent parent;
 
     /**
-     * The color of this component and any child components (unless overridden)
+     * The color, decorations, insertion and events of this component and any
+     * child components (unless overridden)
      */
-    private ChatColor color;
-    /**
-     * Whether this component and any child components (unless overridden) is
-     * bold
-     */
-    private Boolean bold;
-    /**
-     * Whether this component and any child components (unless overridden) is
-     * italic
-     */
-    private Boolean italic;
-    /**
-     * Whether this component and any child components (unless overridden) is
-     * underlined
-     */
-    private Boolean underlined;
-    /**
-     * Whether this component and any child components (unless overridden) is
-     * strikethrough
-     */
-    private Boolean strikethrough;
-    /**
-     * Whether this component and any child components (unless overridden) is
-     * obfuscated
-     */
-    private Boolean obfuscated;
-    /**
-     * The text to insert into the chat when this component (and child
-     * components) are clicked while pressing the shift key
-     */
-    private String insertion;
+    private Style style = Style.EMPTY;
     /**
      * Appended components that inherit this component's formatting and events
      */
     private List<BaseComponent> extra;
+
     /**
-     * The action to preform when this component (and child components) are
-     * clicked
-     */
-    private ClickEvent clickEvent;
-    /**
-     * The action to preform when this component (and child components) are
-     * hovered over
+     * The formatting of this component as resolved when it was frozen, null
+     * while the component can still be modified
      */
-    private HoverEvent hoverEvent;
+    private Style frozenStyle;
 
 	/**
 	 * Creates a BaseComponent.
@@ -87,17 +57,10 @@ public abstract class BaseComponent
 	 */
     BaseComponent(BaseComponent old)
     {
-        setColor( old.getColorRaw() );
-        setBold( old.isBoldRaw() );
-        setItalic( old.isItalicRaw() );
-        setUnderlined( old.isUnderlinedRaw() );
-        setStrikethrough( old.isStrikethroughRaw() );
-        setObfuscated( old.isObfuscatedRaw() );
-        setInsertion( old.getInsertion() );
-        setClickEvent( old.getClickEvent() );
-        setHoverEvent( old.getHoverEvent() );
+        style = old.style;
         if ( old.getExtra() != null )
         {
+            extra = new ArrayList<BaseComponent>( old.getExtra().size() );
             for ( BaseComponent component : old.getExtra() )
             {
                 addExtra( component.duplicate() );
@@ -112,6 +75,175 @@ public abstract class BaseComponent
      */
     public abstract BaseComponent duplicate();
 
+    /**
+     * Returns a deeply immutable copy of this component, with the styles it
+     * inherits resolved once. Any thread can serialize, render or send a
+     * frozen component without copying it first, once it has been published
+     * safely (final field, concurrent collection, ...).
+     * <p>
+     * A frozen component, its extras and its hover components throw an
+     * {@link IllegalStateException} when modified. {@link #duplicate()}
+     * returns a mutable copy, which is also what is added when a frozen
+     * component is added to another one.
+     * </p>
+     *
+     * @return the frozen copy, or this component if it is already frozen
+     */
+    public BaseComponent freeze()
+    {
+        if ( frozenStyle != null )
+        {
+            return this;
+        }
+        BaseComponent copy = duplicate();
+        copy.freeze( this );
+        return copy;
+    }
+
+    private void freeze(BaseComponent original)
+    {
+        frozenStyle = original.getResolvedStyle();
+
+        HoverEvent hoverEvent = style.getHoverEvent();
+        if ( hoverEvent != null && hoverEvent.getValueList() != null )
+        {
+            List<BaseComponent> value = hoverEvent.getValueList();
+            BaseComponent[] frozen = new BaseComponent[ value.size() ];
+            for ( int i = 0; i < frozen.length; i++ )
+            {
+                frozen[i] = value.get( i ) == null ? null : value.get( i ).freeze();
+            }
+            style = style.withHoverEvent( new HoverEvent( hoverEvent.getAction(), frozen ) );
+        }
+        if ( extra != null )
+        {
+            for ( BaseComponent component : extra )
+            {
+                component.freeze( component );
+            }
+            extra = Collections.unmodifiableList( extra );
+        }
+    }
+
+    /**
+     * Freezes the components.
+     *
+     * @param components the components to freeze
+     * @return the frozen components
+     * @see #freeze()
+     */
+    public static BaseComponent[] freeze(BaseComponent... components)
+    {
+        BaseComponent[] frozen = new BaseComponent[ components.length ];
+        for ( int i = 0; i < components.length; i++ )
+        {
+            frozen[i] = components[i] == null ? null : components[i].freeze();
+        }
+        return frozen;
+    }
+
+    /**
+     * Returns the smallest components that render as this component does:
+     * empty texts are dropped, adjacent texts with the same formatting and
+     * events are merged, nesting is flattened where it saves room and only
+     * the formatting that differs from the inherited one is kept. This
+     * component is not modified.
+     * <p>
+     * The components returned are meant to be sent as they are: added to
+     * another component, they would inherit its formatting.
+     * </p>
+     *
+     * @return the normalized components
+     */
+    public BaseComponent[] normalize()
+    {
+        return ComponentNormalizer.normalize( this );
+    }
+
+    /**
+     * Returns the smallest components that render as the given ones do.
+     *
+     * @param components the components to normalize
+     * @return the normalized components
+     * @see #normalize()
+     */
+    public static BaseComponent[] normalize(BaseComponent... components)
+    {
+        return ComponentNormalizer.normalize( components );
+    }
+
+    /**
+     * Splits components whose json is too long to be sent in a single
+     * packet. The components are kept whole as long as they fit; a longer
+     * component is sent as its texts side by side, each with the formatting
+     * and events it had, and a longer text is cut. The components are not
+     * modified.
+     *
+     * @param maxLength the maximum length of the json of a part, at least 45
+     * @param components the components to split
+     * @return the parts, the components themselves if their json fits
+     * @throws IllegalArgumentException if maxLength is too short
+     */
+    public static List<BaseComponent[]> split(int maxLength, BaseComponent... components)
+    {
+        return ComponentNormalizer.split( maxLength, components );
+    }
+
+    /**
+     * Returns whether this component has been frozen and can no longer be
+     * modified.
+     *
+     * @return whether the component is frozen
+     * @see #freeze()
+     */
+    public boolean isFrozen()
+    {
+        return frozenStyle != null;
+    }
+
+    void checkNotFrozen()
+    {
+        Preconditions.checkState( frozenStyle == null, "Frozen components can't be modified" );
+    }
+
+    /**
+     * Returns the style of this component, without checking the parents
+     * style.
+     *
+     * @return the style of this component
+     */
+    public Style getStyle()
+    {
+        return style;
+    }
+
+    /**
+     * Sets the color, decorations, insertion and events of this component at
+     * once.
+     *
+     * @param style the new style
+     */
+    public void setStyle(Style style)
+    {
+        checkNotFrozen();
+        this.style = Preconditions.checkNotNull( style, "style" );
+    }
+
+    /**
+     * Returns the color and decorations of this component once resolved
+     * against the parents. Every decoration of the returned style is set.
+     *
+     * @return the resolved formatting of this component
+     */
+    public Style getResolvedStyle()
+    {
+        if ( frozenStyle != null )
+        {
+            return frozenStyle;
+        }
+        return style.resolve( parent != null ? parent.getResolvedStyle() : null );
+    }
+
     /**
      * Converts the components to a string that uses the old formatting codes
      * ({@link ChatColor#COLOR_CHAR}
@@ -122,13 +254,74 @@ public abstract class BaseComponent
     public static String toLegacyText(BaseComponent... components)
     {
         StringBuilder builder = new StringBuilder();
+        try
+        {
+            toLegacyText( builder, components );
+        } catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the components to an {@link Appendable} using the old formatting
+     * codes ({@link ChatColor#COLOR_CHAR}
+     *
+     * @param out where the text is written to
+     * @param components the components to convert
+     * @throws IOException if the {@link Appendable} fails
+     */
+    public static void toLegacyText(Appendable out, BaseComponent... components) throws IOException
+    {
+        LegacyTextWriter writer = new LegacyTextWriter( out, false );
         for ( BaseComponent msg : components )
         {
-            builder.append( msg.toLegacyText() );
+            msg.toLegacyText( writer );
+        }
+    }
+
+    /**
+     * Converts the components to a string that uses the old formatting codes
+     * ({@link ChatColor#COLOR_CHAR}, writing only the codes needed to go from
+     * the formatting of a segment to the next one. The text renders as the
+     * components do, but is usually much shorter than
+     * {@link #toLegacyText(BaseComponent...)}.
+     *
+     * @param components the components to convert
+     * @return the string in the old format
+     */
+    public static String toCompactLegacyText(BaseComponent... components)
+    {
+        StringBuilder builder = new StringBuilder();
+        try
+        {
+            toCompactLegacyText( builder, components );
+        } catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
         }
         return builder.toString();
     }
 
+    /**
+     * Writes the components to an {@link Appendable} using only the old
+     * formatting codes needed to go from a segment to the next one.
+     *
+     * @param out where the text is written to
+     * @param components the components to convert
+     * @throws IOException if the {@link Appendable} fails
+     * @see #toCompactLegacyText(BaseComponent...)
+     */
+    public static void toCompactLegacyText(Appendable out, BaseComponent... components) throws IOException
+    {
+        LegacyTextWriter writer = new LegacyTextWriter( out, true );
+        for ( BaseComponent msg : components )
+        {
+            msg.toLegacyText( writer );
+        }
+    }
+
     /**
      * Converts the components into a string without any formatting
      *
@@ -138,13 +331,31 @@ public abstract class BaseComponent
     public static String toPlainText(BaseComponent... components)
     {
         StringBuilder builder = new StringBuilder();
-        for ( BaseComponent msg : components )
+        try
         {
-            builder.append( msg.toPlainText() );
+            toPlainText( builder, components );
+        } catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
         }
         return builder.toString();
     }
 
+    /**
+     * Writes the components to an {@link Appendable} without any formatting
+     *
+     * @param out where the text is written to
+     * @param components the components to convert
+     * @throws IOException if the {@link Appendable} fails
+     */
+    public static void toPlainText(Appendable out, BaseComponent... components) throws IOException
+    {
+        for ( BaseComponent msg : components )
+        {
+            msg.toPlainText( out );
+        }
+    }
+
     /**
      * Returns the color of this component. This uses the parent's color if this
      * component doesn't have one. {@link ChatColor#WHITE}
@@ -154,6 +365,10 @@ public abstract class BaseComponent
      */
     public ChatColor getColor()
     {
+        if(frozenStyle!=null)
+            return frozenStyle.getColor();
+
+        ChatColor color = style.getColor();
         if(color!=null)
             return color;
 
@@ -163,7 +378,8 @@ public abstract class BaseComponent
         return null;
     }
 	public void setColor(ChatColor color) {
-		this.color = color;
+		checkNotFrozen();
+		this.style = style.withColor(color);
 	}
 
     /**
@@ -174,7 +390,7 @@ public abstract class BaseComponent
      */
     public ChatColor getColorRaw()
     {
-        return color;
+        return style.getColor();
     }
 
     /**
@@ -186,6 +402,11 @@ public abstract class BaseComponent
      */
     public boolean isBold()
     {
+        if ( frozenStyle != null )
+        {
+            return frozenStyle.is( Style.BOLD );
+        }
+        Boolean bold = style.get( Style.BOLD );
         if ( bold == null )
         {
             return parent != null && parent.isBold();
@@ -193,7 +414,8 @@ public abstract class BaseComponent
         return bold;
     }
 	public void setBold(Boolean bold) {
-		this.bold = bold;
+		checkNotFrozen();
+		this.style = style.withBold(bold);
 	}
 
     /**
@@ -204,7 +426,7 @@ public abstract class BaseComponent
      */
     public Boolean isBoldRaw()
     {
-        return bold;
+        return style.get( Style.BOLD );
     }
 
     /**
@@ -216,6 +438,11 @@ public abstract class BaseComponent
      */
     public boolean isItalic()
     {
+        if ( frozenStyle != null )
+        {
+            return frozenStyle.is( Style.ITALIC );
+        }
+        Boolean italic = style.get( Style.ITALIC );
         if ( italic == null )
         {
             return parent != null && parent.isItalic();
@@ -223,7 +450,8 @@ public abstract class BaseComponent
         return italic;
     }
 	public void setItalic(Boolean italic) {
-		this.italic = italic;
+		checkNotFrozen();
+		this.style = style.withItalic(italic);
 	}
 
     /**
@@ -234,7 +462,7 @@ public abstract class BaseComponent
      */
     public Boolean isItalicRaw()
     {
-        return italic;
+        return style.get( Style.ITALIC );
     }
 
     /**
@@ -246,6 +474,11 @@ public abstract class BaseComponent
      */
     public boolean isUnderlined()
     {
+        if ( frozenStyle != null )
+        {
+            return frozenStyle.is( Style.UNDERLINED );
+        }
+        Boolean underlined = style.get( Style.UNDERLINED );
         if ( underlined == null )
         {
             return parent != null && parent.isUnderlined();
@@ -261,10 +494,11 @@ public abstract class BaseComponent
      */
     public Boolean isUnderlinedRaw()
     {
-        return underlined;
+        return style.get( Style.UNDERLINED );
     }
 	public void setUnderlined(Boolean underlined) {
-		this.underlined = underlined;
+		checkNotFrozen();
+		this.style = style.withUnderlined(underlined);
 	}
 
     /**
@@ -276,6 +510,11 @@ public abstract class BaseComponent
      */
     public boolean isStrikethrough()
     {
+        if ( frozenStyle != null )
+        {
+            return frozenStyle.is( Style.STRIKETHROUGH );
+        }
+        Boolean strikethrough = style.get( Style.STRIKETHROUGH );
         if ( strikethrough == null )
         {
             return parent != null && parent.isStrikethrough();
@@ -291,10 +530,11 @@ public abstract class BaseComponent
      */
     public Boolean isStrikethroughRaw()
     {
-        return strikethrough;
+        return style.get( Style.STRIKETHROUGH );
     }
 	public void setStrikethrough(Boolean strikethrough) {
-		this.strikethrough = strikethrough;
+		checkNotFrozen();
+		this.style = style.withStrikethrough(strikethrough);
 	}
 
     /**
@@ -306,6 +546,11 @@ public abstract class BaseComponent
      */
     public boolean isObfuscated()
     {
+        if ( frozenStyle != null )
+        {
+            return frozenStyle.is( Style.OBFUSCATED );
+        }
+        Boolean obfuscated = style.get( Style.OBFUSCATED );
         if ( obfuscated == null )
         {
             return parent != null && parent.isObfuscated();
@@ -321,29 +566,50 @@ public abstract class BaseComponent
      */
     public Boolean isObfuscatedRaw()
     {
-        return obfuscated;
+        return style.get( Style.OBFUSCATED );
     }
 	public void setObfuscated(Boolean obfuscated) {
-		this.obfuscated = obfuscated;
+		checkNotFrozen();
+		this.style = style.withObfuscated(obfuscated);
 	}
 
 	public String getInsertion() {
-		return this.insertion;
+		return this.style.getInsertion();
 	}
 	public void setInsertion(String insertion) {
-		this.insertion = insertion;
+		checkNotFrozen();
+		this.style = style.withInsertion(insertion);
 	}
 
 	public List<BaseComponent> getExtra() {
 		return this.extra;
 	}
+	/**
+	 * Sets the components appended to this component. Frozen components are
+	 * replaced by mutable copies, in a copy of the list.
+	 *
+	 * @param components the components to append
+	 */
 	public void setExtra(List<BaseComponent> components)
     {
-        for ( BaseComponent component : components )
+        checkNotFrozen();
+        List<BaseComponent> extra = components;
+        for ( int i = 0; i < extra.size(); i++ )
+        {
+            if ( extra.get( i ).frozenStyle != null )
+            {
+                if ( extra == components )
+                {
+                    extra = new ArrayList<BaseComponent>( components );
+                }
+                extra.set( i, extra.get( i ).duplicate() );
+            }
+        }
+        for ( BaseComponent component : extra )
         {
             component.parent = this;
         }
-        extra = components;
+        this.extra = extra;
     }
 
     /**
@@ -359,12 +625,18 @@ public abstract class BaseComponent
 
     /**
      * Appends a component to the component. The text will inherit this
-     * component's formatting
+     * component's formatting. A frozen component is appended as a mutable
+     * copy, which inherits the formatting of this component.
      *
      * @param component the component to append
      */
     public void addExtra(BaseComponent component)
     {
+        checkNotFrozen();
+        if ( component.frozenStyle != null )
+        {
+            component = component.duplicate();
+        }
         if ( extra == null )
         {
             extra = new ArrayList<BaseComponent>();
@@ -374,17 +646,19 @@ public abstract class BaseComponent
     }
 
 	public void setClickEvent(ClickEvent clickEvent) {
-		this.clickEvent = clickEvent;
+		checkNotFrozen();
+		this.style = style.withClickEvent(clickEvent);
 	}
 	public ClickEvent getClickEvent() {
-		return this.clickEvent;
+		return this.style.getClickEvent();
 	}
 
 	public void setHoverEvent(HoverEvent hoverEvent) {
-		this.hoverEvent = hoverEvent;
+		checkNotFrozen();
+		this.style = style.withHoverEvent(hoverEvent);
 	}
 	public HoverEvent getHoverEvent() {
-		return this.hoverEvent;
+		return this.style.getHoverEvent();
 	}
 
 	/**
@@ -394,10 +668,7 @@ public abstract class BaseComponent
      */
     public boolean hasFormatting()
     {
-        return color != null || bold != null
-                || italic != null || underlined != null
-                || strikethrough != null || obfuscated != null
-                || hoverEvent != null || clickEvent != null;
+        return style.hasFormatting();
     }
 
     /**
@@ -408,17 +679,30 @@ public abstract class BaseComponent
     public String toPlainText()
     {
         StringBuilder builder = new StringBuilder();
-        toPlainText( builder );
+        try
+        {
+            toPlainText( builder );
+        } catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
+        }
         return builder.toString();
     }
 
-    void toPlainText(StringBuilder builder)
+    /**
+     * Writes the component to an {@link Appendable} without any formatting
+     *
+     * @param out where the text is written to
+     * @throws IOException if the {@link Appendable} fails
+     */
+    public void toPlainText(Appendable out) throws IOException
     {
+        appendPlainText( out );
         if ( extra != null )
         {
             for ( BaseComponent e : extra )
             {
-                e.toPlainText( builder );
+                e.toPlainText( out );
             }
         }
     }
@@ -432,18 +716,66 @@ public abstract class BaseComponent
     public String toLegacyText()
     {
         StringBuilder builder = new StringBuilder();
-        toLegacyText( builder );
+        try
+        {
+            toLegacyText( builder );
+        } catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
+        }
         return builder.toString();
     }
 
-    void toLegacyText(StringBuilder builder)
+    /**
+     * Writes the component to an {@link Appendable} using the old formatting
+     * codes ({@link ChatColor#COLOR_CHAR}. The styles are resolved once, from
+     * the top of the tree down, instead of walking up the parents for each
+     * component.
+     *
+     * @param out where the text is written to
+     * @throws IOException if the {@link Appendable} fails
+     */
+    public void toLegacyText(Appendable out) throws IOException
+    {
+        toLegacyText( new LegacyTextWriter( out, false ) );
+    }
+
+    private void toLegacyText(LegacyTextWriter writer) throws IOException
+    {
+        toLegacyText( writer, parent != null ? parent.getResolvedStyle() : null );
+    }
+
+    private void toLegacyText(LegacyTextWriter writer, Style parentStyle) throws IOException
     {
+        Style resolved = frozenStyle != null ? frozenStyle : style.resolve( parentStyle );
+        appendLegacyText( writer, resolved );
         if ( extra != null )
         {
             for ( BaseComponent e : extra )
             {
-                e.toLegacyText( builder );
+                e.toLegacyText( writer, resolved );
             }
         }
     }
+
+    /**
+     * Writes the text of this component only, without its extras.
+     *
+     * @param out where the text is written to
+     * @throws IOException if the {@link Appendable} fails
+     */
+    void appendPlainText(Appendable out) throws IOException
+    {
+    }
+
+    /**
+     * Writes the text of this component only, without its extras.
+     *
+     * @param writer where the text is written to
+     * @param resolved the resolved formatting of this component
+     * @throws IOException if the {@link Appendable} fails
+     */
+    void appendLegacyText(LegacyTextWriter writer, Style resolved) throws IOException
+    {
+    }
 }
@@ -0,0 +1,476 @@
+package com.github.hexocraftapi.chat.component;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.Serializer.ComponentSizer;
+import com.github.hexocraftapi.chat.Serializer.ComponentWriter;
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import com.google.common.base.Preconditions;
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites components into the smallest equivalent components, behind
+ * {@link BaseComponent#normalize(BaseComponent...)}.
+ * <p>
+ * The tree is first flattened into segments holding their resolved
+ * formatting and the events they inherit. Empty texts are dropped and
+ * adjacent texts with the same style are merged, unless the first one holds a
+ * {@link ChatColor#COLOR_CHAR} code that would then run into the second one.
+ * The segments are then written either side by side, each with only the
+ * fields differing from the defaults, or as the extras of a single component
+ * holding the formatting most of them share, whichever gives the shorter json.
+ * Components whose events are shared by many texts may already be smaller
+ * than both: copies of them are returned instead.
+ * </p>
+ * <p>
+ * The same segments are used to split components whose json is too long to
+ * be sent at once, behind {@link BaseComponent#split(int, BaseComponent...)}.
+ * </p>
+ */
+final class ComponentNormalizer
+{
+    private static final int DECORATIONS = 5;
+    private static final String COLOR_CODE = String.valueOf( ChatColor.COLOR_CHAR );
+
+    /**
+     * Text, or a component that isn't a text, with its resolved style
+     */
+    private static final class Segment
+    {
+        final StringBuilder text;
+        final BaseComponent component;
+        final Style style;
+
+        Segment(String text, BaseComponent component, Style style)
+        {
+            this.text = text != null ? new StringBuilder( text ) : null;
+            this.component = component;
+            this.style = style;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    static BaseComponent[] normalize(BaseComponent... components)
+    {
+        ComponentNormalizer normalizer = new ComponentNormalizer();
+        for ( BaseComponent component : components )
+        {
+            if ( component != null )
+            {
+                normalizer.add( component, component.getResolvedStyle(), null, null, null );
+            }
+        }
+        BaseComponent[] normalized = normalizer.create();
+
+        // Flattening copies the events of a component onto each of its texts,
+        // which may take more room than the nesting did
+        if ( normalized.length > 0 && length( components ) <= length( normalized ) )
+        {
+            List<BaseComponent> copies = new ArrayList<BaseComponent>( components.length );
+            for ( BaseComponent component : components )
+            {
+                if ( component != null )
+                {
+                    copies.add( component.duplicate() );
+                }
+            }
+            if ( !copies.isEmpty() )
+            {
+                return copies.toArray( new BaseComponent[ copies.size() ] );
+            }
+        }
+        return normalized;
+    }
+
+    private static int length(BaseComponent... components)
+    {
+        return ComponentSizer.length( ComponentWriter.Escaping.HTML_SAFE, components );
+    }
+
+    /**
+     * Length of {@code {"extra":[]}} and {@code ,"text":""}} around the components of a part
+     */
+    private static final int PART_OVERHEAD = 22;
+
+    /**
+     * Room left for the text of a piece, enough for the longest escaped character
+     */
+    private static final int MIN_AVAILABLE = 12;
+
+    /**
+     * Length of {@code {"text":""}}, the smallest piece of a cut text
+     */
+    private static final int EMPTY_TEXT = 11;
+
+    static List<BaseComponent[]> split(int maxLength, BaseComponent... components)
+    {
+        Preconditions.checkArgument( maxLength >= PART_OVERHEAD + EMPTY_TEXT + MIN_AVAILABLE, "maxLength is too short" );
+        List<BaseComponent[]> parts = new ArrayList<BaseComponent[]>();
+        if ( length( components ) <= maxLength )
+        {
+            parts.add( components );
+            return parts;
+        }
+
+        Splitter splitter = new Splitter( maxLength, parts );
+        for ( BaseComponent component : components )
+        {
+            if ( component == null )
+            {
+                continue;
+            }
+            int length = ComponentSizer.length( ComponentWriter.Escaping.HTML_SAFE, component );
+            if ( PART_OVERHEAD + length <= maxLength )
+            {
+                splitter.add( component, length );
+                continue;
+            }
+
+            // Too long on its own: its texts are sent side by side
+            ComponentNormalizer normalizer = new ComponentNormalizer();
+            normalizer.add( component, component.getResolvedStyle(), null, null, null );
+            for ( Segment segment : normalizer.segments )
+            {
+                BaseComponent flat = component( segment, Style.EMPTY.resolve( null ) );
+                length = ComponentSizer.length( ComponentWriter.Escaping.HTML_SAFE, flat );
+                if ( PART_OVERHEAD + length <= maxLength )
+                {
+                    splitter.add( flat, length );
+                } else if ( segment.text != null )
+                {
+                    splitter.add( (TextComponent) flat, segment.text );
+                } else
+                {
+                    // A component that isn't a text can't be cut: its text is sent instead
+                    TextComponent text = new TextComponent( "" );
+                    text.setStyle( flat.getStyle() );
+                    splitter.add( text, segment.component.toLegacyText() );
+                }
+            }
+        }
+        splitter.flush();
+        return parts;
+    }
+
+    /**
+     * Gathers components into parts no longer than the maximum length
+     */
+    private static final class Splitter
+    {
+        private final int maxLength;
+        private final List<BaseComponent[]> parts;
+        private final List<BaseComponent> part = new ArrayList<BaseComponent>();
+        /**
+         * Length of the components of the part and the commas between them
+         */
+        private int partLength;
+
+        Splitter(int maxLength, List<BaseComponent[]> parts)
+        {
+            this.maxLength = maxLength;
+            this.parts = parts;
+        }
+
+        void add(BaseComponent component, int length)
+        {
+            if ( !part.isEmpty() && PART_OVERHEAD + partLength + 1 + length > maxLength )
+            {
+                flush();
+            }
+            partLength += part.isEmpty() ? length : 1 + length;
+            part.add( component );
+        }
+
+        /**
+         * Cuts the text of a component into pieces each fitting in a part.
+         * Events and insertion too long to leave room for the text are
+         * dropped, and so is the formatting if it is still too long.
+         */
+        void add(TextComponent component, CharSequence text)
+        {
+            component.setText( "" );
+            int overhead = ComponentSizer.length( ComponentWriter.Escaping.HTML_SAFE, component );
+            if ( maxLength - PART_OVERHEAD - overhead < MIN_AVAILABLE )
+            {
+                component.setStyle( component.getStyle().getFormatting() );
+                overhead = ComponentSizer.length( ComponentWriter.Escaping.HTML_SAFE, component );
+            }
+            if ( maxLength - PART_OVERHEAD - overhead < MIN_AVAILABLE )
+            {
+                component.setStyle( Style.EMPTY );
+                overhead = ComponentSizer.length( ComponentWriter.Escaping.HTML_SAFE, component );
+            }
+            int available = maxLength - PART_OVERHEAD - overhead;
+            String[] replacements = ComponentWriter.replacements( ComponentWriter.Escaping.HTML_SAFE );
+
+            int start = 0;
+            int length = 0;
+            for ( int i = 0; i < text.length(); )
+            {
+                // A surrogate pair or a color code is never cut
+                int next = i + 1;
+                char c = text.charAt( i );
+                if ( next < text.length() && ( c == ChatColor.COLOR_CHAR || ( Character.isHighSurrogate( c ) && Character.isLowSurrogate( text.charAt( next ) ) ) ) )
+                {
+                    next++;
+                }
+                int charLength = next - i;
+                for ( int j = i; j < next; j++ )
+                {
+                    char e = text.charAt( j );
+                    if ( e < 128 )
+                    {
+                        if ( replacements[e] != null )
+                        {
+                            charLength += replacements[e].length() - 1;
+                        }
+                    } else if ( e == '\u2028' || e == '\u2029' )
+                    {
+                        charLength += 5;
+                    }
+                }
+                if ( length + charLength > available )
+                {
+                    add( piece( component, text, start, i ), overhead + length );
+                    start = i;
+                    length = 0;
+                }
+                length += charLength;
+                i = next;
+            }
+            add( piece( component, text, start, text.length() ), overhead + length );
+        }
+
+        private static BaseComponent piece(TextComponent component, CharSequence text, int start, int end)
+        {
+            TextComponent piece = new TextComponent( component );
+            piece.setText( text.subSequence( start, end ).toString() );
+            return piece;
+        }
+
+        void flush()
+        {
+            if ( !part.isEmpty() )
+            {
+                parts.add( part.toArray( new BaseComponent[ part.size() ] ) );
+                part.clear();
+                partLength = 0;
+            }
+        }
+    }
+
+    private void add(BaseComponent component, Style resolved, String insertion, ClickEvent clickEvent, HoverEvent hoverEvent)
+    {
+        if ( component.getInsertion() != null )
+        {
+            insertion = component.getInsertion();
+        }
+        if ( component.getClickEvent() != null )
+        {
+            clickEvent = component.getClickEvent();
+        }
+        if ( component.getHoverEvent() != null )
+        {
+            hoverEvent = component.getHoverEvent();
+        }
+        Style style = resolved.withInsertion( insertion ).withClickEvent( clickEvent ).withHoverEvent( hoverEvent );
+
+        if ( !( component instanceof TextComponent ) )
+        {
+            // Kept whole, its extras being relative to it
+            segments.add( new Segment( null, component, style ) );
+            return;
+        }
+
+        String text = ( (TextComponent) component ).getText();
+        if ( text != null && !text.isEmpty() )
+        {
+            Segment last = segments.isEmpty() ? null : segments.get( segments.size() - 1 );
+            if ( last != null && last.text != null && last.style.equals( style ) && last.text.indexOf( COLOR_CODE ) == -1 )
+            {
+                last.text.append( text );
+            } else
+            {
+                segments.add( new Segment( text, null, style ) );
+            }
+        }
+
+        if ( component.getExtra() != null )
+        {
+            for ( BaseComponent extra : component.getExtra() )
+            {
+                if ( extra != null )
+                {
+                    add( extra, extra.isFrozen() ? extra.getResolvedStyle() : extra.getStyle().resolve( resolved ), insertion, clickEvent, hoverEvent );
+                }
+            }
+        }
+    }
+
+    private BaseComponent[] create()
+    {
+        if ( segments.isEmpty() )
+        {
+            // The client will crash if the array is empty
+            return new BaseComponent[] { new TextComponent( "" ) };
+        }
+
+        BaseComponent[] flat = new BaseComponent[ segments.size() ];
+        for ( int i = 0; i < flat.length; i++ )
+        {
+            flat[i] = component( segments.get( i ), Style.EMPTY.resolve( null ) );
+        }
+        if ( flat.length == 1 )
+        {
+            return flat;
+        }
+
+        BaseComponent[] shared = new BaseComponent[] { shared() };
+        return length( shared ) < length( flat ) ? shared : flat;
+    }
+
+    /**
+     * Writes the segments as the extras of a component holding the formatting
+     * most of them share
+     */
+    private TextComponent shared()
+    {
+        Style first = segments.get( 0 ).style;
+
+        // Most common color, unless a segment has none as it couldn't go back to no color
+        ChatColor color = null;
+        Map<ChatColor, Integer> colors = new HashMap<ChatColor, Integer>();
+        int best = 0;
+        for ( Segment segment : segments )
+        {
+            ChatColor segmentColor = segment.style.getColor();
+            if ( segmentColor == null )
+            {
+                color = null;
+                best = -1;
+                break;
+            }
+            Integer count = colors.get( segmentColor );
+            count = count == null ? 1 : count + 1;
+            colors.put( segmentColor, count );
+            if ( count > best )
+            {
+                best = count;
+                color = segmentColor;
+            }
+        }
+
+        // Decorations most segments have
+        int[] decorations = new int[ DECORATIONS ];
+        for ( Segment segment : segments )
+        {
+            for ( int i = 0; i < DECORATIONS; i++ )
+            {
+                if ( segment.style.is( i ) )
+                {
+                    decorations[i]++;
+                }
+            }
+        }
+        Style parent = Style.EMPTY.withColor( color );
+        for ( int i = 0; i < DECORATIONS; i++ )
+        {
+            parent = parent.with( i, decorations[i] * 2 > segments.size() );
+        }
+
+        // Events all segments share
+        String insertion = first.getInsertion();
+        ClickEvent clickEvent = first.getClickEvent();
+        HoverEvent hoverEvent = first.getHoverEvent();
+        for ( Segment segment : segments )
+        {
+            if ( insertion != null && !insertion.equals( segment.style.getInsertion() ) )
+            {
+                insertion = null;
+            }
+            if ( clickEvent != segment.style.getClickEvent() )
+            {
+                clickEvent = null;
+            }
+            if ( hoverEvent != segment.style.getHoverEvent() )
+            {
+                hoverEvent = null;
+            }
+        }
+        parent = parent.withInsertion( insertion ).withClickEvent( clickEvent ).withHoverEvent( hoverEvent );
+
+        TextComponent root = new TextComponent( "" );
+        root.setStyle( component( parent, Style.EMPTY.resolve( null ) ) );
+        int start = 0;
+        Segment head = segments.get( 0 );
+        if ( head.text != null && head.style.equals( parent ) )
+        {
+            // The first text can be the text of the parent itself
+            root.setText( head.text.toString() );
+            start = 1;
+        }
+        List<BaseComponent> extra = new ArrayList<BaseComponent>( segments.size() - start );
+        for ( int i = start; i < segments.size(); i++ )
+        {
+            extra.add( component( segments.get( i ), parent ) );
+        }
+        root.setExtra( extra );
+        return root;
+    }
+
+    /**
+     * Returns the component of a segment, with only the fields differing from
+     * the ones it inherits
+     */
+    private static BaseComponent component(Segment segment, Style parent)
+    {
+        BaseComponent component = segment.text != null ? new TextComponent( segment.text.toString() ) : segment.component.duplicate();
+        component.setStyle( component( segment.style, parent ) );
+        return component;
+    }
+
+    /**
+     * Returns the style setting only what differs from a resolved parent
+     */
+    private static Style component(Style style, Style parent)
+    {
+        Style relative = Style.EMPTY.withColor( style.getColor() == parent.getColor() ? null : style.getColor() );
+        for ( int i = 0; i < DECORATIONS; i++ )
+        {
+            if ( style.is( i ) != parent.is( i ) )
+            {
+                relative = relative.with( i, style.is( i ) );
+            }
+        }
+        return relative
+                .withInsertion( eq( style.getInsertion(), parent.getInsertion() ) ? null : style.getInsertion() )
+                .withClickEvent( style.getClickEvent() == parent.getClickEvent() ? null : style.getClickEvent() )
+                .withHoverEvent( style.getHoverEvent() == parent.getHoverEvent() ? null : style.getHoverEvent() );
+    }
+
+    private static boolean eq(String a, String b)
+    {
+        return a == null ? b == null : a.equals( b );
+    }
+}
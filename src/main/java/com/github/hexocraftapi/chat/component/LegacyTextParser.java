@@ -0,0 +1,225 @@
+package com.github.hexocraftapi.chat.component;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.ChatColorName;
+import org.bukkit.ChatColor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass parser of the old formatting system that used
+ * {@link ChatColor#COLOR_CHAR}, behind
+ * {@link TextComponent#fromLegacyText(String, Linkifier)}.
+ * <p>
+ * The formatting is kept as an interned {@link Style} instead of a component
+ * copied at each code, and each text is handed to a {@link Handler} as a
+ * range of the message. Codes are looked up in a table indexed by character
+ * and the linkifier is only asked outside of codes.
+ * </p>
+ */
+public final class LegacyTextParser
+{
+    /**
+     * Receives the texts of a legacy message, in order. Each text would be a
+     * {@link TextComponent} of {@link TextComponent#fromLegacyText(String, Linkifier)}.
+     */
+    public interface Handler
+    {
+        /**
+         * Receives a text.
+         *
+         * @param style the style of the text, links included
+         * @param text the characters holding the text
+         * @param start the start of the text in the characters
+         * @param end the end of the text in the characters
+         * @throws IOException if the handler fails
+         */
+        void text(Style style, CharSequence text, int start, int end) throws IOException;
+    }
+
+    private final String message;
+    private final Linkifier linkifier;
+    private Handler handler;
+
+    private Style style = Style.EMPTY;
+    /**
+     * Start of the text not yet added to a component
+     */
+    private int start;
+    /**
+     * Text before unknown codes, only used when there are some
+     */
+    private StringBuilder skipped;
+
+    /**
+     * Creates a LegacyTextParser.
+     *
+     * @param message the text to parse
+     * @param linkifier the linkifier, or null to leave links as plain text
+     */
+    public LegacyTextParser(String message, Linkifier linkifier)
+    {
+        this.message = message;
+        this.linkifier = linkifier;
+    }
+
+    /**
+     * Parses the message into components.
+     *
+     * @return the components needed to print the message to the client
+     */
+    BaseComponent[] parse()
+    {
+        final List<BaseComponent> components = new ArrayList<BaseComponent>();
+        try
+        {
+            parse( new Handler()
+            {
+                @Override
+                public void text(Style style, CharSequence text, int start, int end)
+                {
+                    TextComponent component = new TextComponent( text.subSequence( start, end ).toString() );
+                    component.setStyle( style );
+                    components.add( component );
+                }
+            } );
+        } catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
+        }
+
+        // The client will crash if the array is empty
+        if ( components.isEmpty() )
+        {
+            components.add( new TextComponent( "" ) );
+        }
+
+        return components.toArray( new BaseComponent[ components.size() ] );
+    }
+
+    /**
+     * Parses the message, handing each text to a handler. Nothing is handed
+     * over for an empty message.
+     *
+     * @param handler the handler receiving the texts
+     * @throws IOException if the handler fails
+     */
+    public void parse(Handler handler) throws IOException
+    {
+        this.handler = handler;
+        this.style = Style.EMPTY;
+        this.start = 0;
+        if ( skipped != null )
+        {
+            skipped.setLength( 0 );
+        }
+        int length = message.length();
+        int wordEnd = -1;
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = message.charAt( i );
+            if ( c == ChatColor.COLOR_CHAR )
+            {
+                ChatColor format = i + 1 < length ? ChatColorName.getByChar( message.charAt( i + 1 ) ) : null;
+                if ( format == null )
+                {
+                    // Unknown codes are dropped
+                    if ( skipped == null )
+                    {
+                        skipped = new StringBuilder();
+                    }
+                    skipped.append( message, start, i );
+                    start = Math.min( i + 2, length );
+                    i++;
+                    continue;
+                }
+                addText( i );
+                start = i + 2;
+                i++;
+                format( format );
+                continue;
+            }
+
+            if ( linkifier != null )
+            {
+                if ( wordEnd < i )
+                {
+                    wordEnd = message.indexOf( ' ', i );
+                    if ( wordEnd == -1 )
+                    {
+                        wordEnd = length;
+                    }
+                }
+                int end = linkifier.link( message, i, wordEnd );
+                if ( end > i )
+                {
+                    addText( i );
+                    handler.text( style.withClickEvent( linkifier.getClickEvent( message.substring( i, end ) ) ), message, i, end );
+                    start = end;
+                    i = end - 1;
+                }
+            }
+        }
+        addText( length );
+    }
+
+    private void format(ChatColor format)
+    {
+        switch ( format )
+        {
+            case BOLD:
+                style = style.with( Style.BOLD, true );
+                break;
+            case ITALIC:
+                style = style.with( Style.ITALIC, true );
+                break;
+            case UNDERLINE:
+                style = style.with( Style.UNDERLINED, true );
+                break;
+            case STRIKETHROUGH:
+                style = style.with( Style.STRIKETHROUGH, true );
+                break;
+            case MAGIC:
+                style = style.with( Style.OBFUSCATED, true );
+                break;
+            case RESET:
+                format = ChatColor.WHITE;
+            default:
+                style = Style.EMPTY.withColor( format );
+                break;
+        }
+    }
+
+    /**
+     * Adds the text from start to end, if any, with the current formatting
+     */
+    private void addText(int end) throws IOException
+    {
+        if ( skipped != null && skipped.length() > 0 )
+        {
+            skipped.append( message, start, end );
+            handler.text( style, skipped, 0, skipped.length() );
+            skipped.setLength( 0 );
+        } else if ( end > start )
+        {
+            handler.text( style, message, start, end );
+        }
+    }
+}
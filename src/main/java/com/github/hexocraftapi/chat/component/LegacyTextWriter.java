@@ -0,0 +1,131 @@
+package com.github.hexocraftapi.chat.component;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.bukkit.ChatColor;
+
+import java.io.IOException;
+
+/**
+ * Writes text segments with the old formatting codes
+ * ({@link ChatColor#COLOR_CHAR}.
+ * <p>
+ * In full mode the color and every decoration are written before each
+ * segment. In compact mode the writer keeps track of the formatting the
+ * client is in and only writes the codes needed to go to the formatting of
+ * the next segment: a color code when the color changes or a decoration has
+ * to be cleared (a color code clears the decorations), {@link ChatColor#RESET}
+ * only when there is no color to write, and the decorations missing.
+ * </p>
+ */
+public final class LegacyTextWriter
+{
+    private static final ChatColor[] DECORATIONS = { ChatColor.BOLD, ChatColor.ITALIC, ChatColor.UNDERLINE, ChatColor.STRIKETHROUGH, ChatColor.MAGIC };
+
+    private final Appendable out;
+    private final boolean compact;
+
+    /**
+     * Color the client is currently in
+     */
+    private ChatColor color;
+    /**
+     * Decorations the client currently has, one bit per decoration
+     */
+    private int decorations;
+
+    /**
+     * Creates a LegacyTextWriter.
+     *
+     * @param out where the text is written to
+     * @param compact whether only the codes needed are written
+     */
+    public LegacyTextWriter(Appendable out, boolean compact)
+    {
+        this.out = out;
+        this.compact = compact;
+    }
+
+    /**
+     * Writes a segment of text.
+     *
+     * @param resolved the resolved formatting of the text
+     * @param text the text
+     * @throws IOException if the {@link Appendable} fails
+     */
+    public void append(Style resolved, String text) throws IOException
+    {
+        appendFormat( resolved, text != null && text.isEmpty() );
+        out.append( text );
+    }
+
+    /**
+     * Writes the codes needed before a segment of text. The text itself is
+     * then written by the caller to the same {@link Appendable}.
+     *
+     * @param resolved the resolved formatting of the text
+     * @param empty whether the text is empty
+     * @throws IOException if the {@link Appendable} fails
+     */
+    public void appendFormat(Style resolved, boolean empty) throws IOException
+    {
+        ChatColor color = resolved.getColor();
+        int decorations = 0;
+        for ( int i = 0; i < DECORATIONS.length; i++ )
+        {
+            if ( resolved.is( i ) )
+            {
+                decorations |= 1 << i;
+            }
+        }
+
+        if ( !compact )
+        {
+            if ( color != null )
+            {
+                out.append( color.toString() );
+            }
+            appendDecorations( decorations );
+            return;
+        }
+
+        // Formatting codes before an empty segment would be useless
+        if ( empty )
+        {
+            return;
+        }
+        if ( color != this.color || ( this.decorations & ~decorations ) != 0 )
+        {
+            out.append( color != null ? color.toString() : ChatColor.RESET.toString() );
+            this.color = color;
+            this.decorations = 0;
+        }
+        appendDecorations( decorations & ~this.decorations );
+        this.decorations = decorations;
+    }
+
+    private void appendDecorations(int decorations) throws IOException
+    {
+        for ( int i = 0; decorations != 0; i++, decorations >>= 1 )
+        {
+            if ( ( decorations & 1 ) != 0 )
+            {
+                out.append( DECORATIONS[i].toString() );
+            }
+        }
+    }
+}
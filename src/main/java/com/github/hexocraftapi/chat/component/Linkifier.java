@@ -0,0 +1,56 @@
+package com.github.hexocraftapi.chat.component;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.event.ClickEvent;
+
+/**
+ * Finds the links of a legacy text for
+ * {@link TextComponent#fromLegacyText(String, Linkifier)}.
+ * <p>
+ * The parser asks the linkifier for a link at each character that isn't part
+ * of a formatting code, from left to right, until a link is found. The link
+ * found becomes a component of its own with the click event of the linkifier
+ * and the formatting of the surrounding text.
+ * </p>
+ */
+public interface Linkifier
+{
+    /**
+     * Finds web links (http, https or a bare domain name) spanning the end of a
+     * word, the way {@link TextComponent#fromLegacyText(String)} always did.
+     */
+    Linkifier URLS = new UrlLinkifier();
+
+    /**
+     * Returns the end of the link starting at a position.
+     *
+     * @param message the legacy text
+     * @param start the position of the character
+     * @param wordEnd the position of the next space, or the length of the text
+     * @return the position after the link, or -1 if there is no link at start
+     */
+    int link(String message, int start, int wordEnd);
+
+    /**
+     * Returns the click event of a link.
+     *
+     * @param link the text of the link
+     * @return the click event, or null for none
+     */
+    ClickEvent getClickEvent(String link);
+}
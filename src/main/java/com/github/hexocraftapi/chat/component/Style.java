@@ -0,0 +1,310 @@
+package com.github.hexocraftapi.chat.component;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import com.github.hexocraftapi.chat.event.HoverEvent;
+import org.bukkit.ChatColor;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The immutable formatting of a component: color, decorations, insertion and
+ * events.
+ * <p>
+ * Each decoration is stored on two bits (set, value) so that an unset
+ * decoration can still be inherited from the parent component. Styles without
+ * insertion nor events are interned: two such styles with the same formatting
+ * are the same object and can be compared with {@code ==}.
+ * </p>
+ */
+public final class Style
+{
+    static final int BOLD = 0;
+    static final int ITALIC = 1;
+    static final int UNDERLINED = 2;
+    static final int STRIKETHROUGH = 3;
+    static final int OBFUSCATED = 4;
+
+    private static final int DECORATION_BITS = 10;
+    private static final ChatColor[] COLORS = ChatColor.values();
+
+    /**
+     * Interned styles, indexed by color and decorations
+     */
+    private static final AtomicReferenceArray<Style> INTERNED = new AtomicReferenceArray<Style>( ( COLORS.length + 1 ) << DECORATION_BITS );
+
+    /**
+     * The style without any formatting
+     */
+    public static final Style EMPTY = of( null, 0 );
+
+    private final ChatColor color;
+    private final int decorations;
+    private final String insertion;
+    private final ClickEvent clickEvent;
+    private final HoverEvent hoverEvent;
+
+    private Style(ChatColor color, int decorations, String insertion, ClickEvent clickEvent, HoverEvent hoverEvent)
+    {
+        this.color = color;
+        this.decorations = decorations;
+        this.insertion = insertion;
+        this.clickEvent = clickEvent;
+        this.hoverEvent = hoverEvent;
+    }
+
+    /**
+     * Returns the interned style with the given formatting.
+     *
+     * @param color the color, or null to inherit it
+     * @param bold whether the text is bold, or null to inherit it
+     * @param italic whether the text is italic, or null to inherit it
+     * @param underlined whether the text is underlined, or null to inherit it
+     * @param strikethrough whether the text is strikethrough, or null to inherit it
+     * @param obfuscated whether the text is obfuscated, or null to inherit it
+     * @return the style
+     */
+    public static Style of(ChatColor color, Boolean bold, Boolean italic, Boolean underlined, Boolean strikethrough, Boolean obfuscated)
+    {
+        int decorations = with( 0, BOLD, bold );
+        decorations = with( decorations, ITALIC, italic );
+        decorations = with( decorations, UNDERLINED, underlined );
+        decorations = with( decorations, STRIKETHROUGH, strikethrough );
+        decorations = with( decorations, OBFUSCATED, obfuscated );
+        return of( color, decorations );
+    }
+
+    private static Style of(ChatColor color, int decorations)
+    {
+        int index = ( color == null ? 0 : color.ordinal() + 1 ) << DECORATION_BITS | decorations;
+        Style style = INTERNED.get( index );
+        if ( style == null )
+        {
+            INTERNED.compareAndSet( index, null, new Style( color, decorations, null, null, null ) );
+            style = INTERNED.get( index );
+        }
+        return style;
+    }
+
+    private static Style of(ChatColor color, int decorations, String insertion, ClickEvent clickEvent, HoverEvent hoverEvent)
+    {
+        if ( insertion == null && clickEvent == null && hoverEvent == null )
+        {
+            return of( color, decorations );
+        }
+        return new Style( color, decorations, insertion, clickEvent, hoverEvent );
+    }
+
+    private static int with(int decorations, int decoration, Boolean value)
+    {
+        int mask = 3 << ( decoration * 2 );
+        if ( value == null )
+        {
+            return decorations & ~mask;
+        }
+        return ( decorations & ~mask ) | ( value ? mask : 1 << ( decoration * 2 ) );
+    }
+
+    Boolean get(int decoration)
+    {
+        int bits = decorations >> ( decoration * 2 );
+        if ( ( bits & 1 ) == 0 )
+        {
+            return null;
+        }
+        return ( bits & 2 ) != 0;
+    }
+
+    boolean is(int decoration)
+    {
+        return ( ( decorations >> ( decoration * 2 ) ) & 2 ) != 0;
+    }
+
+    Style with(int decoration, Boolean value)
+    {
+        int decorations = with( this.decorations, decoration, value );
+        return decorations == this.decorations ? this : of( color, decorations, insertion, clickEvent, hoverEvent );
+    }
+
+    public ChatColor getColor()
+    {
+        return color;
+    }
+
+    public Boolean isBold()
+    {
+        return get( BOLD );
+    }
+
+    public Boolean isItalic()
+    {
+        return get( ITALIC );
+    }
+
+    public Boolean isUnderlined()
+    {
+        return get( UNDERLINED );
+    }
+
+    public Boolean isStrikethrough()
+    {
+        return get( STRIKETHROUGH );
+    }
+
+    public Boolean isObfuscated()
+    {
+        return get( OBFUSCATED );
+    }
+
+    public String getInsertion()
+    {
+        return insertion;
+    }
+
+    public ClickEvent getClickEvent()
+    {
+        return clickEvent;
+    }
+
+    public HoverEvent getHoverEvent()
+    {
+        return hoverEvent;
+    }
+
+    public Style withColor(ChatColor color)
+    {
+        return color == this.color ? this : of( color, decorations, insertion, clickEvent, hoverEvent );
+    }
+
+    public Style withBold(Boolean bold)
+    {
+        return with( BOLD, bold );
+    }
+
+    public Style withItalic(Boolean italic)
+    {
+        return with( ITALIC, italic );
+    }
+
+    public Style withUnderlined(Boolean underlined)
+    {
+        return with( UNDERLINED, underlined );
+    }
+
+    public Style withStrikethrough(Boolean strikethrough)
+    {
+        return with( STRIKETHROUGH, strikethrough );
+    }
+
+    public Style withObfuscated(Boolean obfuscated)
+    {
+        return with( OBFUSCATED, obfuscated );
+    }
+
+    public Style withInsertion(String insertion)
+    {
+        return insertion == this.insertion ? this : of( color, decorations, insertion, clickEvent, hoverEvent );
+    }
+
+    public Style withClickEvent(ClickEvent clickEvent)
+    {
+        return clickEvent == this.clickEvent ? this : of( color, decorations, insertion, clickEvent, hoverEvent );
+    }
+
+    public Style withHoverEvent(HoverEvent hoverEvent)
+    {
+        return hoverEvent == this.hoverEvent ? this : of( color, decorations, insertion, clickEvent, hoverEvent );
+    }
+
+    /**
+     * Returns the formatting of this style only, without insertion nor
+     * events.
+     *
+     * @return the interned formatting
+     */
+    public Style getFormatting()
+    {
+        return of( color, decorations );
+    }
+
+    /**
+     * Returns whether any color, decoration or event is set. The insertion
+     * is not taken into account, like {@link BaseComponent#hasFormatting()}.
+     *
+     * @return Whether any formatting or events are set
+     */
+    public boolean hasFormatting()
+    {
+        return color != null || decorations != 0 || clickEvent != null || hoverEvent != null;
+    }
+
+    /**
+     * Returns the formatting obtained when this style inherits from a parent
+     * formatting: every unset color or decoration takes the parent's value.
+     * Insertion and events are not inherited.
+     *
+     * @param parent the resolved formatting of the parent, or null
+     * @return the resolved formatting, with every decoration set
+     */
+    public Style resolve(Style parent)
+    {
+        ChatColor color = this.color;
+        int decorations = this.decorations;
+        if ( parent != null )
+        {
+            if ( color == null )
+            {
+                color = parent.color;
+            }
+            // Take the parent's bits for every decoration not set here
+            int unset = ~( decorations & 0x155 ) & 0x155;
+            decorations |= ( parent.decorations & ( unset | unset << 1 ) );
+        }
+        // Set the remaining decorations to false
+        decorations |= ~decorations & 0x155;
+        return of( color, decorations );
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( !( o instanceof Style ) )
+        {
+            return false;
+        }
+        Style style = (Style) o;
+        return color == style.color && decorations == style.decorations
+                && ( insertion == null ? style.insertion == null : insertion.equals( style.insertion ) )
+                && clickEvent == style.clickEvent && hoverEvent == style.hoverEvent;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = color == null ? 0 : color.hashCode();
+        result = 31 * result + decorations;
+        result = 31 * result + ( insertion == null ? 0 : insertion.hashCode() );
+        result = 31 * result + System.identityHashCode( clickEvent );
+        result = 31 * result + System.identityHashCode( hoverEvent );
+        return result;
+    }
+}
@@ -16,127 +16,40 @@ package com.github.hexocraftapi.chat.component;
  * limitations under the License.
  */
 
-import com.github.hexocraftapi.chat.event.ClickEvent;
 import org.bukkit.ChatColor;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class TextComponent extends BaseComponent
 {
 
-    private static final Pattern url = Pattern.compile( "^(?:(https?)://)?([-\\w_\\.]{2,}\\.[a-z]{2,4})(/\\S*)?$" );
-
-     /**
+    /**
      * Converts the old formatting system that used
      * {@link ChatColor#COLOR_CHAR} into the new json based
-     * system.
+     * system. Web links are made clickable.
      *
      * @param message the text to convert
      * @return the components needed to print the message to the client
      */
     public static BaseComponent[] fromLegacyText(String message)
     {
-        ArrayList<BaseComponent> components = new ArrayList<BaseComponent>();
-        StringBuilder builder = new StringBuilder();
-        TextComponent component = new TextComponent();
-        Matcher matcher = url.matcher( message );
-
-        for ( int i = 0; i < message.length(); i++ )
-        {
-            char c = message.charAt( i );
-            if ( c == ChatColor.COLOR_CHAR )
-            {
-                i++;
-                c = message.charAt( i );
-                if ( c >= 'A' && c <= 'Z' )
-                {
-                    c += 32;
-                }
-                ChatColor format = ChatColor.getByChar( c );
-                if ( format == null )
-                {
-                    continue;
-                }
-                if ( builder.length() > 0 )
-                {
-                    TextComponent old = component;
-                    component = new TextComponent( old );
-                    old.setText( builder.toString() );
-                    builder = new StringBuilder();
-                    components.add( old );
-                }
-                switch ( format )
-                {
-                    case BOLD:
-                        component.setBold( true );
-                        break;
-                    case ITALIC:
-                        component.setItalic( true );
-                        break;
-                    case UNDERLINE:
-                        component.setUnderlined( true );
-                        break;
-                    case STRIKETHROUGH:
-                        component.setStrikethrough( true );
-                        break;
-                    case MAGIC:
-                        component.setObfuscated( true );
-                        break;
-                    case RESET:
-                        format = ChatColor.WHITE;
-                    default:
-                        component = new TextComponent();
-                        component.setColor( format );
-                        break;
-                }
-                continue;
-            }
-            int pos = message.indexOf( ' ', i );
-            if ( pos == -1 )
-            {
-                pos = message.length();
-            }
-            if ( matcher.region( i, pos ).find() )
-            { //Web link handling
-
-                if ( builder.length() > 0 )
-                {
-                    TextComponent old = component;
-                    component = new TextComponent( old );
-                    old.setText( builder.toString() );
-                    builder = new StringBuilder();
-                    components.add( old );
-                }
-
-                TextComponent old = component;
-                component = new TextComponent( old );
-                String urlString = message.substring( i, pos );
-                component.setText( urlString );
-                component.setClickEvent( new ClickEvent( ClickEvent.Action.OPEN_URL,
-                        urlString.startsWith( "http" ) ? urlString : "http://" + urlString ) );
-                components.add( component );
-                i += pos - i - 1;
-                component = old;
-                continue;
-            }
-            builder.append( c );
-        }
-        if ( builder.length() > 0 )
-        {
-            component.setText( builder.toString() );
-            components.add( component );
-        }
-
-        // The client will crash if the array is empty
-        if ( components.isEmpty() )
-        {
-            components.add( new TextComponent( "" ) );
-        }
-
-        return components.toArray( new BaseComponent[ components.size() ] );
+        return fromLegacyText( message, Linkifier.URLS );
+    }
+
+    /**
+     * Converts the old formatting system that used
+     * {@link ChatColor#COLOR_CHAR} into the new json based
+     * system, with the links found by a linkifier.
+     *
+     * @param message the text to convert
+     * @param linkifier the linkifier, or null to leave links as plain text
+     * @return the components needed to print the message to the client
+     */
+    public static BaseComponent[] fromLegacyText(String message, Linkifier linkifier)
+    {
+        return new LegacyTextParser( message, linkifier ).parse();
     }
 
     /**
@@ -190,6 +103,7 @@ public class TextComponent extends BaseComponent
         return this.text;
     }
     public void setText(String text) {
+        checkNotFrozen();
         this.text = text;
     }
 
@@ -205,40 +119,15 @@ public class TextComponent extends BaseComponent
     }
 
     @Override
-    protected void toPlainText(StringBuilder builder)
+    void appendPlainText(Appendable out) throws IOException
     {
-        builder.append( text );
-        super.toPlainText( builder );
+        out.append( text );
     }
 
     @Override
-    protected void toLegacyText(StringBuilder builder)
+    void appendLegacyText(LegacyTextWriter writer, Style resolved) throws IOException
     {
-        ChatColor color = getColor();
-        if(color != null)
-            builder.append(getColor());
-        if ( isBold() )
-        {
-            builder.append( ChatColor.BOLD );
-        }
-        if ( isItalic() )
-        {
-            builder.append( ChatColor.ITALIC );
-        }
-        if ( isUnderlined() )
-        {
-            builder.append( ChatColor.UNDERLINE );
-        }
-        if ( isStrikethrough() )
-        {
-            builder.append( ChatColor.STRIKETHROUGH );
-        }
-        if ( isObfuscated() )
-        {
-            builder.append( ChatColor.MAGIC );
-        }
-        builder.append( text );
-        super.toLegacyText( builder );
+        writer.append( resolved, text );
     }
 
     @Override
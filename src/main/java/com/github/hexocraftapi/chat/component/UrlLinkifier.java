@@ -0,0 +1,143 @@
+package com.github.hexocraftapi.chat.component;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.github.hexocraftapi.chat.event.ClickEvent;
+import org.bukkit.ChatColor;
+
+/**
+ * Hand written matcher of
+ * {@code ^(?:(https?)://)?([-\w_\.]{2,}\.[a-z]{2,4})(/\S*)?$} on the rest of
+ * a word.
+ * <p>
+ * The host is the run of host characters following the scheme. It must be
+ * followed by a path or the end of the word, and end with a dot and a 2 to 4
+ * letters domain, at least two characters after its start. As a host starting
+ * one character earlier in the same run would have matched as well, only the
+ * first character of a run needs to be checked, unless it starts a scheme.
+ * </p>
+ * <p>
+ * As {@code $} also matches before a line terminator ending the input, a
+ * word ending with one is linked as a whole, line terminator included.
+ * </p>
+ */
+final class UrlLinkifier implements Linkifier
+{
+    @Override
+    public int link(String message, int start, int wordEnd)
+    {
+        if ( start >= wordEnd )
+        {
+            return -1;
+        }
+
+        // Like $, the end may be followed by a final line terminator
+        int limit = wordEnd;
+        if ( limit - start >= 2 && message.charAt( limit - 1 ) == '\n' && message.charAt( limit - 2 ) == '\r' )
+        {
+            limit -= 2;
+        } else if ( isLineTerminator( message.charAt( limit - 1 ) ) )
+        {
+            limit--;
+        }
+        if ( start >= limit )
+        {
+            return -1;
+        }
+
+        char c = message.charAt( start );
+        int host = start;
+        if ( c == 'h' && message.startsWith( "http", start ) )
+        {
+            if ( message.startsWith( "://", start + 4 ) )
+            {
+                host = start + 7;
+            } else if ( message.startsWith( "s://", start + 4 ) )
+            {
+                host = start + 8;
+            }
+        }
+        if ( host == start )
+        {
+            if ( !isHostChar( c ) )
+            {
+                return -1;
+            }
+            // The previous character was checked too, unless it was a formatting code
+            if ( start > 0 && isHostChar( message.charAt( start - 1 ) ) && ( start < 2 || message.charAt( start - 2 ) != ChatColor.COLOR_CHAR ) )
+            {
+                return -1;
+            }
+        }
+
+        int end = host;
+        int dot = -1;
+        for ( ; end < limit && isHostChar( c = message.charAt( end ) ); end++ )
+        {
+            if ( c == '.' )
+            {
+                dot = end;
+            }
+        }
+        if ( dot - host < 2 || end - dot - 1 < 2 || end - dot - 1 > 4 )
+        {
+            return -1;
+        }
+        for ( int i = dot + 1; i < end; i++ )
+        {
+            c = message.charAt( i );
+            if ( c < 'a' || c > 'z' )
+            {
+                return -1;
+            }
+        }
+
+        // Path
+        if ( end < limit )
+        {
+            if ( message.charAt( end ) != '/' )
+            {
+                return -1;
+            }
+            for ( int i = end + 1; i < limit; i++ )
+            {
+                c = message.charAt( i );
+                if ( c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r' )
+                {
+                    return -1;
+                }
+            }
+        }
+        return wordEnd;
+    }
+
+    @Override
+    public ClickEvent getClickEvent(String link)
+    {
+        return new ClickEvent( ClickEvent.Action.OPEN_URL, link.startsWith( "http" ) ? link : "http://" + link );
+    }
+
+    private static boolean isLineTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isHostChar(char c)
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) || c == '.' || c == '-' || c == '_';
+    }
+}
@@ -18,6 +18,10 @@ package com.github.hexocraftapi.chat.event;
 
 import com.github.hexocraftapi.chat.component.BaseComponent;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 final public class HoverEvent
 {
     public enum Action
@@ -34,10 +38,15 @@ final public class HoverEvent
     private final Action action;
 
     /**
-     * The BaseComponent
+     * The BaseComponent, copied once so that it can't change afterwards
      */
     private final BaseComponent[] value;
 
+    /**
+     * Read-only view of {@link #value}, read without copying
+     */
+    private final List<BaseComponent> values;
+
 
 	/**
 	 * Creates a HoverEvent.
@@ -47,7 +56,8 @@ final public class HoverEvent
 	 */
 	public HoverEvent(HoverEvent.Action action, BaseComponent[] value) {
 		this.action = action;
-		this.value = value;
+		this.value = value == null ? null : value.clone();
+		this.values = value == null ? null : Collections.unmodifiableList(Arrays.asList(this.value));
 	}
 
 	/**
@@ -57,15 +67,33 @@ final public class HoverEvent
 	 */
 	public HoverEvent(HoverEvent event) {
 		this.action = event.getAction();
-		this.value = event.getValue();
+		this.value = event.value;
+		this.values = event.values;
 	}
 
 	public HoverEvent.Action getAction() {
         return this.action;
     }
 
+    /**
+     * Returns the components shown on hover. The array is a copy, so that
+     * the hover components of a frozen component stay as they are.
+     *
+     * @return the components, or null
+     * @see #getValueList()
+     */
     public BaseComponent[] getValue() {
-        return this.value;
+        return this.value == null ? null : this.value.clone();
+    }
+
+    /**
+     * Returns the components shown on hover without copying them, for the
+     * code reading them on each serialization.
+     *
+     * @return a read-only list of the components, or null
+     */
+    public List<BaseComponent> getValueList() {
+        return this.values;
     }
 
 }
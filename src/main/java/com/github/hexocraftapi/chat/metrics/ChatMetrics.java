@@ -0,0 +1,294 @@
+package com.github.hexocraftapi.chat.metrics;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import com.github.hexocraftapi.chat.ChatMessageType;
+import com.google.common.base.Preconditions;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of the metrics of the library.
+ * <p>
+ * The metrics are only recorded once enabled. Disabled, each instrumented
+ * call costs the read of a volatile flag; enabled, it costs a few atomic
+ * additions on {@link Counter}s and {@link Histogram}s, and no allocation.
+ * The library records:
+ * </p>
+ * <ul>
+ * <li>{@code sent.<type>} and {@code sent.<type>.chars}: the messages sent per
+ * {@link ChatMessageType} and the length of their json in chars,</li>
+ * <li>{@code serialize.nanos} and {@code serialize.chars}: the time spent in
+ * {@code ComponentSerializer.toString} and the length of the json in chars,</li>
+ * <li>{@code serialize.bytes}: the size of the UTF-8 json written by
+ * {@code ComponentSerializer.toUtf8} and {@code legacyToUtf8}, length prefix
+ * excluded,</li>
+ * <li>{@code parse.nanos}: the time spent in {@code ComponentSerializer.parse}.</li>
+ * </ul>
+ * <p>
+ * Caches and queues register gauges under a name of their choosing, and
+ * plugins may register their own counters. {@link #dump()} gives every
+ * metric as text, ready to be shown by a command.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public final class ChatMetrics
+{
+	private static volatile boolean enabled;
+
+	/**
+	 * Counters, histograms and gauges by name
+	 */
+	private static final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<String, Object>();
+
+	private static final Counter[] SENT = new Counter[ChatMessageType.values().length];
+	private static final Counter[] SENT_CHARS = new Counter[ChatMessageType.values().length];
+	private static final Histogram SERIALIZE_NANOS = histogram("serialize.nanos");
+	private static final Histogram SERIALIZE_CHARS = histogram("serialize.chars");
+	private static final Histogram SERIALIZE_BYTES = histogram("serialize.bytes");
+	private static final Histogram PARSE_NANOS = histogram("parse.nanos");
+
+	static
+	{
+		for(ChatMessageType type : ChatMessageType.values())
+		{
+			String name = "sent." + type.name().toLowerCase(Locale.ROOT);
+			SENT[type.ordinal()] = counter(name);
+			SENT_CHARS[type.ordinal()] = counter(name + ".chars");
+		}
+	}
+
+	private ChatMetrics() {}
+
+	/**
+	 * @return true if the metrics are recorded
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops recording the metrics. Disabled by default.
+	 *
+	 * @param enabled Whether the metrics are recorded.
+	 */
+	public static void setEnabled(boolean enabled) {
+		ChatMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Returns a counter, created if needed.
+	 *
+	 * @param name The name of the counter.
+	 * @return The counter.
+	 * @throws IllegalArgumentException if the name is used by another kind of metric.
+	 */
+	public static Counter counter(String name)
+	{
+		Object metric = metrics.get(name);
+		if(metric == null)
+			metric = putIfAbsent(name, new Counter());
+		return cast(name, metric, Counter.class);
+	}
+
+	/**
+	 * Returns a histogram, created if needed.
+	 *
+	 * @param name The name of the histogram.
+	 * @return The histogram.
+	 * @throws IllegalArgumentException if the name is used by another kind of metric.
+	 */
+	public static Histogram histogram(String name)
+	{
+		Object metric = metrics.get(name);
+		if(metric == null)
+			metric = putIfAbsent(name, new Histogram());
+		return cast(name, metric, Histogram.class);
+	}
+
+	/**
+	 * @return the metric registered under the name, the one created if none was
+	 */
+	private static Object putIfAbsent(String name, Object created)
+	{
+		Object metric = metrics.putIfAbsent(name, created);
+		return metric != null ? metric : created;
+	}
+
+	private static <T> T cast(String name, Object metric, Class<T> type)
+	{
+		Preconditions.checkArgument(type.isInstance(metric), "%s is not a %s", name, type.getSimpleName());
+		return type.cast(metric);
+	}
+
+	/**
+	 * Registers a gauge, replacing the metric of the same name.
+	 *
+	 * @param name The name of the gauge.
+	 * @param gauge The gauge.
+	 */
+	public static void gauge(String name, Gauge gauge)
+	{
+		metrics.put(name, Preconditions.checkNotNull(gauge, "gauge"));
+	}
+
+	/**
+	 * Removes a metric, such as the gauges of a cache no longer used.
+	 *
+	 * @param name The name of the metric.
+	 */
+	public static void remove(String name)
+	{
+		metrics.remove(name);
+	}
+
+	/**
+	 * Removes a metric if it is still the one given, so that a metric
+	 * registered again under the same name is kept.
+	 *
+	 * @param name The name of the metric.
+	 * @param metric The metric registered.
+	 */
+	public static void remove(String name, Object metric)
+	{
+		metrics.remove(name, metric);
+	}
+
+	/**
+	 * Records a message sent.
+	 *
+	 * @param position Where the message is displayed.
+	 * @param length The length of the json of the message, in chars: the
+	 *               packet holds a String, encoded by the server.
+	 */
+	public static void sent(ChatMessageType position, int length)
+	{
+		if(!enabled)
+			return;
+		SENT[position.ordinal()].increment();
+		SENT_CHARS[position.ordinal()].add(length);
+	}
+
+	/**
+	 * Records a serialization.
+	 *
+	 * @param nanos The time spent serializing.
+	 * @param length The length of the json, in chars.
+	 */
+	public static void serialized(long nanos, int length)
+	{
+		if(!enabled)
+			return;
+		SERIALIZE_NANOS.record(nanos);
+		SERIALIZE_CHARS.record(length);
+	}
+
+	/**
+	 * Records a json written as UTF-8.
+	 *
+	 * @param bytes The size of the json, in bytes.
+	 */
+	public static void encoded(int bytes)
+	{
+		if(!enabled)
+			return;
+		SERIALIZE_BYTES.record(bytes);
+	}
+
+	/**
+	 * Records a parse.
+	 *
+	 * @param nanos The time spent parsing.
+	 */
+	public static void parsed(long nanos)
+	{
+		if(!enabled)
+			return;
+		PARSE_NANOS.record(nanos);
+	}
+
+	/**
+	 * Hands every metric over to an exporter, in the order of their names.
+	 *
+	 * @param exporter The exporter.
+	 */
+	public static void export(MetricsExporter exporter)
+	{
+		for(Map.Entry<String, Object> entry : metrics.entrySet())
+		{
+			Object metric = entry.getValue();
+			if(metric instanceof Counter)
+				exporter.counter(entry.getKey(), ((Counter)metric).get());
+			else if(metric instanceof Histogram)
+				exporter.histogram(entry.getKey(), (Histogram)metric);
+			else
+				exporter.gauge(entry.getKey(), ((Gauge)metric).getValue());
+		}
+	}
+
+	/**
+	 * Returns every metric as text, one per line.
+	 *
+	 * @return The text.
+	 */
+	public static String dump()
+	{
+		final StringBuilder builder = new StringBuilder();
+		export(new MetricsExporter()
+		{
+			@Override
+			public void counter(String name, long value)
+			{
+				builder.append(name).append(' ').append(value).append('\n');
+			}
+
+			@Override
+			public void gauge(String name, long value)
+			{
+				builder.append(name).append(' ').append(value).append('\n');
+			}
+
+			@Override
+			public void histogram(String name, Histogram histogram)
+			{
+				builder.append(String.format(Locale.ROOT, "%s count=%d mean=%.1f p50=%d p99=%d max=%d\n", name, histogram.getCount(), histogram.getMean(),
+				                             histogram.getPercentile(0.5), histogram.getPercentile(0.99), histogram.getMax()));
+			}
+		});
+		return builder.toString();
+	}
+
+	/**
+	 * Sets the counters and histograms back to zero. Gauges are left as they
+	 * are.
+	 */
+	public static void reset()
+	{
+		for(Object metric : metrics.values())
+		{
+			if(metric instanceof Counter)
+				((Counter)metric).reset();
+			else if(metric instanceof Histogram)
+				((Histogram)metric).reset();
+		}
+	}
+}
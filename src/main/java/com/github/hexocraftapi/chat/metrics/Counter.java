@@ -0,0 +1,96 @@
+package com.github.hexocraftapi.chat.metrics;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter updated from many threads.
+ * <p>
+ * The count is spread over stripes, each on its own cache line, and a
+ * thread always adds to the same stripe: threads rarely update the same
+ * memory, and an update allocates nothing. Reading the count sums the
+ * stripes, so it may miss the updates made while it is read.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public final class Counter
+{
+	/**
+	 * Longs per stripe: 64 bytes, the usual size of a cache line
+	 */
+	private static final int PADDING = 8;
+	private static final int STRIPES;
+
+	static
+	{
+		int stripes = 1;
+		while(stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < 64)
+			stripes <<= 1;
+		STRIPES = stripes;
+	}
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * Adds one to the count.
+	 */
+	public void increment()
+	{
+		add(1);
+	}
+
+	/**
+	 * Adds to the count.
+	 *
+	 * @param value The value to add.
+	 */
+	public void add(long value)
+	{
+		cells.addAndGet(stripe(), value);
+	}
+
+	/**
+	 * @return the sum of the values added
+	 */
+	public long get()
+	{
+		long sum = 0;
+		for(int i = 0; i < STRIPES; i++)
+			sum += cells.get(i * PADDING);
+		return sum;
+	}
+
+	/**
+	 * Sets the count back to zero.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < STRIPES; i++)
+			cells.set(i * PADDING, 0);
+	}
+
+	static int stripe()
+	{
+		long id = Thread.currentThread().getId();
+		// Spread the ids, which are consecutive
+		int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+	}
+}
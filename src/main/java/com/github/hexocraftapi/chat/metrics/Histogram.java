@@ -0,0 +1,144 @@
+package com.github.hexocraftapi.chat.metrics;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of values recorded from many threads, such as durations or
+ * sizes.
+ * <p>
+ * A value is counted in the bucket of its power of two, so recording costs a
+ * few atomic additions and no allocation, and percentiles are given within a
+ * factor of two. The count and sum are {@link Counter}s. Values below zero are
+ * counted as zero.
+ * </p>
+ *
+ * @author <b>Hexosse</b> (<a href="https://github.com/hexosse">on GitHub</a>))
+ */
+public final class Histogram
+{
+	/**
+	 * Bucket 0 holds 0, bucket i holds the values from 2^(i-1) to 2^i - 1
+	 */
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final Counter count = new Counter();
+	private final Counter sum = new Counter();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value The value.
+	 */
+	public void record(long value)
+	{
+		if(value < 0)
+			value = 0;
+		buckets.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+
+		long current = max.get();
+		while(value > current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+
+	private static int bucket(long value)
+	{
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * @return the sum of the values recorded
+	 */
+	public long getSum()
+	{
+		return sum.get();
+	}
+
+	/**
+	 * @return the largest value recorded
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * @return the mean of the values recorded, 0 if there are none
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+		return count == 0 ? 0 : (double)getSum() / count;
+	}
+
+	/**
+	 * Returns a value that a proportion of the recorded values don't exceed,
+	 * rounded up to the end of its bucket.
+	 *
+	 * @param quantile The proportion, from 0 to 1 (0.99 for the 99th percentile).
+	 * @return The value, 0 if there are none.
+	 */
+	public long getPercentile(double quantile)
+	{
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if(total == 0)
+			return 0;
+
+		long rank = (long)Math.ceil(Math.max(0, Math.min(1, quantile)) * total);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+			if(seen >= rank && counts[i] > 0)
+				return Math.min(getMax(), i == 0 ? 0 : (1L << i) - 1);
+		}
+		return getMax();
+	}
+
+	/**
+	 * Forgets the values recorded.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+}
@@ -0,0 +1,50 @@
+package com.github.hexocraftapi.chat.metrics;
+
+/*
+ * Copyright 2016 hexosse
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Receives the metrics of {@link ChatMetrics#export(MetricsExporter)}, in the
+ * order of their names. An exporter can write them to a file, a monitoring
+ * system or a command sender.
+ */
+public interface MetricsExporter
+{
+	/**
+	 * Receives a counter.
+	 *
+	 * @param name The name of the counter.
+	 * @param value The count.
+	 */
+	void counter(String name, long value);
+
+	/**
+	 * Receives a gauge.
+	 *
+	 * @param name The name of the gauge.
+	 * @param value The current value of the gauge.
+	 */
+	void gauge(String name, long value);
+
+	/**
+	 * Receives a histogram.
+	 *
+	 * @param name The name of the histogram.
+	 * @param histogram The histogram.
+	 */
+	void histogram(String name, Histogram histogram);
+}